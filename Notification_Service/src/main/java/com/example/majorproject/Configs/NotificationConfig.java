@@ -1,17 +1,46 @@
 package com.example.majorproject.Configs;
 
+import com.example.majorproject.Events.EventDeserializer;
+import com.example.majorproject.Events.EventSchemaRegistry;
+import com.example.majorproject.Events.UserCreatedEvent;
+import com.example.majorproject.Events.UserUpdatedEvent;
+import com.example.majorproject.Events.WalletUpdatedEvent;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.Serializer;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.core.*;
+import org.springframework.kafka.listener.CommonDelegatingErrorHandler;
+import org.springframework.kafka.listener.CommonErrorHandler;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.kafka.support.serializer.DelegatingByTypeSerializer;
+import org.springframework.kafka.support.serializer.DelegatingByTopicDeserializer;
+import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.util.backoff.ExponentialBackOff;
+import org.springframework.util.backoff.FixedBackOff;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.regex.Pattern;
 
 @Configuration
 public class NotificationConfig {
@@ -19,33 +48,154 @@ public class NotificationConfig {
     @Value("${spring.kafka.bootstrap-servers}")
     private String bootstrapServers;
 
+    @Value("${kafka.schema-registry:}")
+    private String schemaRegistry;
+
+    @Value("${kafka.topic.user-created}")
+    private String userCreatedTopic;
+
+    @Value("${kafka.topic.user-updated}")
+    private String userUpdatedTopic;
+
+    @Value("${kafka.topic.notification-status:notification-status}")
+    private String notificationStatusTopic;
+
+    @Value("${notification.kafka.batch.max-records:500}")
+    private int batchMaxRecords;
+
+    @Value("${notification.kafka.batch.max-wait-ms:50}")
+    private int batchMaxWaitMs;
+
+    @Value("${notification.kafka.batch.min-bytes:1}")
+    private int batchMinBytes;
+
+    @Value("${notification.kafka.batch.dead-letter-attempts:10}")
+    private int deadLetterAttempts;
+
+    @Value("${notification.kafka.batch.dead-letter-backoff-ms:1000}")
+    private long deadLetterBackOffMs;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    @Autowired
+    private ProducerTuning producerTuning;
+
+    // ✅ Tuned producer (batching, compression, idempotence) that also exports the Kafka client metrics
     @Bean
-    ProducerFactory<String, String> producerFactory() {
-        Map<String, Object> props = new HashMap<>();
-        props.put("bootstrap.servers", bootstrapServers);
+    ProducerFactory<String, String> producerFactory(MeterRegistry meterRegistry) {
+        Map<String, Object> props = producerTuning.apply(new HashMap<>());
+        props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
         props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
-        return new DefaultKafkaProducerFactory<>(props);
+        DefaultKafkaProducerFactory<String, String> factory = new DefaultKafkaProducerFactory<>(props);
+        factory.addListener(new MicrometerProducerListener<>(meterRegistry));
+        return factory;
     }
 
 
     @Bean
-    ConsumerFactory<String, String> consumerFactory() {
+    ConsumerFactory<String, Object> consumerFactory() {
+        return eventConsumerFactory(consumerProps());
+    }
+
+    private Map<String, Object> consumerProps() {
         Map<String, Object> props = new HashMap<>();
         props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
-        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
-        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
-        return new DefaultKafkaConsumerFactory<>(props);
+        props.put(EventSchemaRegistry.LOCATION_CONFIG, schemaRegistry);
+        return props;
     }
 
+    // Each topic is decoded straight into its event record; undecodable records are skipped by the error handler
+    private ConsumerFactory<String, Object> eventConsumerFactory(Map<String, Object> props) {
+        return new DefaultKafkaConsumerFactory<>(props, StringDeserializer::new,
+                () -> new ErrorHandlingDeserializer<>(new DelegatingByTopicDeserializer(Map.of(
+                        Pattern.compile(Pattern.quote(userCreatedTopic)), new EventDeserializer<>(UserCreatedEvent.class),
+                        Pattern.compile(Pattern.quote(userUpdatedTopic)), new EventDeserializer<>(UserUpdatedEvent.class),
+                        Pattern.compile(Pattern.quote(notificationStatusTopic)), new EventDeserializer<>(WalletUpdatedEvent.class)),
+                        new ByteArrayDeserializer())));
+    }
 
     @Bean
-    KafkaTemplate<String, String> kafkaTemplate() {
-        return new KafkaTemplate<>(producerFactory());
+    ConcurrentKafkaListenerContainerFactory<String, Object> kafkaListenerContainerFactory(MeterRegistry meterRegistry) {
+        ConcurrentKafkaListenerContainerFactory<String, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactory());
+        // Continues the trace from the record headers and times each listener call
+        factory.setRecordInterceptor(new QueueWaitInterceptor<>(meterRegistry));
+        factory.getContainerProperties().setObservationEnabled(true);
+        applyThreading(factory);
+        return factory;
+    }
+
+    // ✅ Hands a whole poll to the listener (up to max-records, waiting at most max-wait-ms for min-bytes),
+    // which stores it with one batch insert; offsets are committed once the listener returns
+    @Bean
+    ConcurrentKafkaListenerContainerFactory<String, Object> batchKafkaListenerContainerFactory(MeterRegistry meterRegistry,
+                                                                                        ProducerFactory<String, String> producerFactory) {
+        Map<String, Object> props = consumerProps();
+        props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, batchMaxRecords);
+        props.put(ConsumerConfig.FETCH_MAX_WAIT_MS_CONFIG, batchMaxWaitMs);
+        props.put(ConsumerConfig.FETCH_MIN_BYTES_CONFIG, batchMinBytes);
+
+        ConcurrentKafkaListenerContainerFactory<String, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(eventConsumerFactory(props));
+        factory.setBatchListener(true);
+        factory.setBatchInterceptor(new QueueWaitInterceptor<>(meterRegistry));
+        factory.setCommonErrorHandler(batchErrorHandler(producerFactory));
+        applyThreading(factory);
+        return factory;
+    }
+
+    // ✅ A poll whose write failed is retried as a whole (the consumer stays paused meanwhile):
+    // transient DB failures (connection lost, lock timeouts, deadlocks) are retried until MySQL is back, so an
+    // outage only delays notifications; any other failure is retried a few times and the poll's records are then
+    // parked on <topic>.DLT rather than skipped
+    private CommonErrorHandler batchErrorHandler(ProducerFactory<String, String> producerFactory) {
+        DefaultErrorHandler deadLettering = new DefaultErrorHandler(
+                new DeadLetterPublishingRecoverer(deadLetterTemplate(producerFactory),
+                        (record, ex) -> new TopicPartition(record.topic() + ".DLT", -1)),
+                new FixedBackOff(deadLetterBackOffMs, deadLetterAttempts - 1));
+
+        ExponentialBackOff untilDbIsBack = new ExponentialBackOff(1000, 2);
+        untilDbIsBack.setMaxInterval(30_000);
+        DefaultErrorHandler waitForDb = new DefaultErrorHandler(untilDbIsBack);
+
+        CommonDelegatingErrorHandler errorHandler = new CommonDelegatingErrorHandler(deadLettering);
+        errorHandler.setCauseChainTraversing(true);
+        errorHandler.addDelegate(TransientDataAccessException.class, waitForDb);
+        errorHandler.addDelegate(RecoverableDataAccessException.class, waitForDb);
+        errorHandler.addDelegate(DataAccessResourceFailureException.class, waitForDb);
+        errorHandler.addDelegate(CannotCreateTransactionException.class, waitForDb);
+        return errorHandler;
+    }
+
+    // Event records are written as JSON; records that could not be decoded keep their original bytes
+    private KafkaTemplate<String, Object> deadLetterTemplate(ProducerFactory<String, String> producerFactory) {
+        Map<Class<?>, Serializer<?>> serializers = new LinkedHashMap<>();
+        serializers.put(byte[].class, new ByteArraySerializer());
+        serializers.put(Object.class, new JsonSerializer<>());
+        return new KafkaTemplate<>(new DefaultKafkaProducerFactory<String, Object>(
+                producerFactory.getConfigurationProperties(), new StringSerializer(),
+                new DelegatingByTypeSerializer(serializers, true)));
+    }
+
+
+    @Bean
+    KafkaTemplate<String, String> kafkaTemplate(ProducerFactory<String, String> producerFactory) {
+        return new KafkaTemplate<>(producerFactory);
     };
 
     @Bean
     ObjectMapper objectMapper() {
         return new ObjectMapper();
     }
+
+    // ✅ In virtual-thread mode the listener containers poll and run listeners on virtual threads as well
+    private void applyThreading(ConcurrentKafkaListenerContainerFactory<String, ?> factory) {
+        if (virtualThreads) {
+            SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("kafka-listener-");
+            executor.setVirtualThreads(true);
+            factory.getContainerProperties().setListenerTaskExecutor(executor);
+        }
+    }
 }
@@ -0,0 +1,48 @@
+package com.example.majorproject.Configs;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.springframework.kafka.listener.BatchInterceptor;
+import org.springframework.kafka.listener.RecordInterceptor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records how long each record waited between being produced and reaching a listener
+ * ({@code kafka.consumer.queue.wait}, tagged by topic). Processing time is the {@code spring.kafka.listener} timer.
+ */
+public class QueueWaitInterceptor<K, V> implements RecordInterceptor<K, V>, BatchInterceptor<K, V> {
+
+    private final MeterRegistry meterRegistry;
+
+    public QueueWaitInterceptor(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public ConsumerRecord<K, V> intercept(ConsumerRecord<K, V> record, Consumer<K, V> consumer) {
+        recordWait(record, System.currentTimeMillis());
+        return record;
+    }
+
+    @Override
+    public ConsumerRecords<K, V> intercept(ConsumerRecords<K, V> records, Consumer<K, V> consumer) {
+        long now = System.currentTimeMillis();
+        records.forEach(record -> recordWait(record, now));
+        return records;
+    }
+
+    private void recordWait(ConsumerRecord<K, V> record, long now) {
+        if (record.timestamp() <= 0) {
+            return;
+        }
+        Timer.builder("kafka.consumer.queue.wait")
+                .description("Time between a record being produced and handed to a listener")
+                .tag("topic", record.topic())
+                .register(meterRegistry)
+                .record(Math.max(0, now - record.timestamp()), TimeUnit.MILLISECONDS);
+    }
+}
@@ -1,16 +1,19 @@
 package com.example.majorproject.Controllers;
 
 
+import com.example.majorproject.Dtos.NotificationPageDto;
 import com.example.majorproject.Models.Notification;
 import com.example.majorproject.Services.NotificationService;
+import com.example.majorproject.Services.NotificationStreamService;
 import io.swagger.v3.oas.annotations.Operation;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.nio.file.AccessDeniedException;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -22,6 +25,9 @@ public class NotificationController {
     @Autowired
     private NotificationService notificationService;
 
+    @Autowired
+    private NotificationStreamService notificationStreamService;
+
     @Operation(summary = "Get all notifications for a user")
     @GetMapping("/me")
     public ResponseEntity<List<Notification>> getUserNotifications(Authentication authentication) {
@@ -30,6 +36,35 @@ public class NotificationController {
         return ResponseEntity.ok(notificationService.getNotificationsByUser(userId));
     }
 
+    @Operation(summary = "Get a page of the user's notifications, newest first; pass nextCursor back as ?cursor=")
+    @GetMapping("/me/page")
+    public ResponseEntity<NotificationPageDto> getUserNotificationPage(@RequestParam(required = false) String cursor,
+                                                                       @RequestParam(defaultValue = "20") int limit,
+                                                                       Authentication authentication) {
+        @SuppressWarnings("unchecked")
+        Map<String, Object> principal = (Map<String, Object>) authentication.getPrincipal();
+        Integer userId = (Integer) principal.get("userId");
+        return ResponseEntity.ok(notificationService.getInbox(userId, cursor, limit));
+    }
+
+    @Operation(summary = "Stream the user's new notifications as Server-Sent Events (event name: notification)")
+    @GetMapping(value = "/me/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamNotifications(Authentication authentication) {
+        @SuppressWarnings("unchecked")
+        Map<String, Object> principal = (Map<String, Object>) authentication.getPrincipal();
+        Integer userId = (Integer) principal.get("userId");
+        return notificationStreamService.subscribe(userId);
+    }
+
+    @Operation(summary = "Count the user's unread notifications")
+    @GetMapping("/me/unread-count")
+    public ResponseEntity<Map<String, Long>> getUnreadCount(Authentication authentication) {
+        @SuppressWarnings("unchecked")
+        Map<String, Object> principal = (Map<String, Object>) authentication.getPrincipal();
+        Integer userId = (Integer) principal.get("userId");
+        return ResponseEntity.ok(Map.of("unread", notificationService.countUnread(userId)));
+    }
+
 
     @Operation(summary = "Mark a single notification as read")
     @PatchMapping("/{notificationId}/mark-read")
@@ -0,0 +1,26 @@
+package com.example.majorproject.Dtos;
+
+import com.example.majorproject.Models.NotificationStatus;
+import com.example.majorproject.Models.NotificationType;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.sql.Date;
+
+// Inbox row, selected straight into this shape so no Notification entities are loaded
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class NotificationDto {
+
+    private Integer id;
+
+    private String message;
+
+    private NotificationType type;
+
+    private NotificationStatus status;
+
+    private Date createdAt;
+}
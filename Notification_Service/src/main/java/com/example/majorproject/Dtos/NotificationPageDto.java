@@ -0,0 +1,18 @@
+package com.example.majorproject.Dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class NotificationPageDto {
+
+    private List<NotificationDto> items;
+
+    // Pass back as ?cursor= for the next page; null on the last page
+    private String nextCursor;
+}
@@ -0,0 +1,243 @@
+package com.example.majorproject.Events;
+
+import org.apache.kafka.common.errors.SerializationException;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.RecordComponent;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary layout for event records:
+ * <pre>
+ * magic(0x00) | schema id (2 bytes) | schema version (1 byte) | null bitmap | fields in schema order
+ * </pre>
+ * int and long fields are zig-zag varints, strings are a varint length followed by UTF-8 bytes.
+ * The magic byte can never start a JSON document, so readers tell the two formats apart per record.
+ */
+final class BinaryEventCodec {
+
+    static final byte MAGIC = 0x00;
+
+    private static final ClassValue<RecordLayout> LAYOUTS = new ClassValue<>() {
+        @Override
+        protected RecordLayout computeValue(Class<?> type) {
+            return new RecordLayout(type);
+        }
+    };
+
+    private final EventSchemaRegistry registry;
+
+    BinaryEventCodec(EventSchemaRegistry registry) {
+        this.registry = registry;
+    }
+
+    static boolean isBinary(byte[] data) {
+        return data.length > 0 && data[0] == MAGIC;
+    }
+
+    byte[] encode(Object event) {
+        EventSchemaRegistry.Schema schema = registry.latest(event.getClass());
+        RecordLayout layout = LAYOUTS.get(event.getClass());
+        List<EventSchemaRegistry.Field> fields = schema.fields();
+
+        Object[] values = new Object[fields.size()];
+        byte[] nulls = new byte[(fields.size() + 7) / 8];
+        for (int i = 0; i < fields.size(); i++) {
+            values[i] = layout.get(event, fields.get(i).name());
+            if (values[i] == null) {
+                nulls[i >> 3] |= (byte) (1 << (i & 7));
+            }
+        }
+
+        Output out = new Output(32);
+        out.write(MAGIC);
+        out.write((byte) (schema.id() >> 8));
+        out.write((byte) schema.id());
+        out.write((byte) schema.version());
+        out.write(nulls);
+        for (int i = 0; i < fields.size(); i++) {
+            if (values[i] == null) {
+                continue;
+            }
+            switch (fields.get(i).type()) {
+                case INT -> out.writeVarLong(zigZag(((Number) values[i]).intValue()));
+                case LONG -> out.writeVarLong(zigZag(((Number) values[i]).longValue()));
+                case STRING -> {
+                    byte[] bytes = values[i].toString().getBytes(StandardCharsets.UTF_8);
+                    out.writeVarLong(bytes.length);
+                    out.write(bytes);
+                }
+            }
+        }
+        return out.toByteArray();
+    }
+
+    <T> T decode(byte[] data, Class<T> type) {
+        try {
+            Input in = new Input(data, 1);
+            int id = (in.read() & 0xFF) << 8 | (in.read() & 0xFF);
+            int version = in.read() & 0xFF;
+            EventSchemaRegistry.Schema schema = registry.schema(id, version);
+            if (!schema.eventName().equals(type.getSimpleName())) {
+                throw new SerializationException("Expected " + type.getSimpleName() + " but record holds " + schema.eventName());
+            }
+
+            List<EventSchemaRegistry.Field> fields = schema.fields();
+            byte[] nulls = in.read((fields.size() + 7) / 8);
+            RecordLayout layout = LAYOUTS.get(type);
+            Object[] args = new Object[layout.components.length];
+            for (int i = 0; i < fields.size(); i++) {
+                if ((nulls[i >> 3] & (1 << (i & 7))) != 0) {
+                    continue;
+                }
+                EventSchemaRegistry.Field field = fields.get(i);
+                Object value = switch (field.type()) {
+                    case INT -> (int) unZigZag(in.readVarLong());
+                    case LONG -> unZigZag(in.readVarLong());
+                    case STRING -> {
+                        int length = (int) in.readVarLong();
+                        yield new String(in.read(length), StandardCharsets.UTF_8);
+                    }
+                };
+                // Fields this version of the record does not know are read and dropped
+                Integer index = layout.indexByName.get(field.name());
+                if (index != null) {
+                    args[index] = value;
+                }
+            }
+            return type.cast(layout.constructor.newInstance(args));
+        } catch (SerializationException e) {
+            throw e;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            throw new SerializationException("Failed to decode binary " + type.getSimpleName(), e);
+        }
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static final class RecordLayout {
+        final RecordComponent[] components;
+        final Map<String, Integer> indexByName = new HashMap<>();
+        final Method[] accessors;
+        final Constructor<?> constructor;
+
+        RecordLayout(Class<?> type) {
+            if (!type.isRecord()) {
+                throw new SerializationException(type.getSimpleName() + " is not a record");
+            }
+            components = type.getRecordComponents();
+            accessors = new Method[components.length];
+            Class<?>[] parameterTypes = new Class<?>[components.length];
+            for (int i = 0; i < components.length; i++) {
+                indexByName.put(components[i].getName(), i);
+                accessors[i] = components[i].getAccessor();
+                parameterTypes[i] = components[i].getType();
+            }
+            try {
+                constructor = type.getDeclaredConstructor(parameterTypes);
+            } catch (NoSuchMethodException e) {
+                throw new SerializationException("No canonical constructor on " + type.getSimpleName(), e);
+            }
+        }
+
+        Object get(Object event, String name) {
+            Integer index = indexByName.get(name);
+            if (index == null) {
+                throw new SerializationException(event.getClass().getSimpleName() + " has no field " + name);
+            }
+            try {
+                return accessors[index].invoke(event);
+            } catch (ReflectiveOperationException e) {
+                throw new SerializationException("Failed to read " + name + " from " + event.getClass().getSimpleName(), e);
+            }
+        }
+    }
+
+    private static final class Output {
+        private byte[] buffer;
+        private int size;
+
+        Output(int capacity) {
+            buffer = new byte[capacity];
+        }
+
+        void write(byte b) {
+            ensure(1);
+            buffer[size++] = b;
+        }
+
+        void write(byte[] bytes) {
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buffer, size, bytes.length);
+            size += bytes.length;
+        }
+
+        void writeVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[size++] = (byte) value;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, size);
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+            }
+        }
+    }
+
+    private static final class Input {
+        private final byte[] data;
+        private int position;
+
+        Input(byte[] data, int position) {
+            this.data = data;
+            this.position = position;
+        }
+
+        byte read() {
+            if (position >= data.length) {
+                throw new SerializationException("Truncated binary event");
+            }
+            return data[position++];
+        }
+
+        byte[] read(int length) {
+            if (length < 0 || position + length > data.length) {
+                throw new SerializationException("Truncated binary event");
+            }
+            byte[] bytes = Arrays.copyOfRange(data, position, position + length);
+            position += length;
+            return bytes;
+        }
+
+        long readVarLong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = read();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new SerializationException("Malformed varint in binary event");
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package com.example.majorproject.Events;
+
+/**
+ * Published on user-created once the user is stored. {@code name} is null in events from older producers.
+ */
+public record UserCreatedEvent(Integer id, String name) {
+}
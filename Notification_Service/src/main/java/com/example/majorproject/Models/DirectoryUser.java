@@ -0,0 +1,22 @@
+package com.example.majorproject.Models;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+/**
+ * This service's own copy of a user's display name, kept up to date from user-created and user-updated.
+ * The id is User_Service's user id.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "user_directory")
+public class DirectoryUser {
+    @Id
+    private Integer id;
+
+    @Column(nullable = false)
+    private String name;
+}
@@ -13,7 +13,12 @@ import java.sql.Date;
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
-@Table(name="notifications")
+@Table(name="notifications", indexes = {
+        // Inbox pages: seek by user, newest (highest id) first
+        @Index(name = "idx_notifications_user_id", columnList = "user_id, id"),
+        // Unread count without touching read rows
+        @Index(name = "idx_notifications_user_status", columnList = "user_id, status")
+})
 public class Notification {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -0,0 +1,7 @@
+package com.example.majorproject.Repositories;
+
+import com.example.majorproject.Models.DirectoryUser;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface DirectoryUserRepository extends JpaRepository<DirectoryUser, Integer> {
+}
@@ -1,8 +1,10 @@
 package com.example.majorproject.Repositories;
 
+import com.example.majorproject.Dtos.NotificationDto;
 import com.example.majorproject.Models.Notification;
 import com.example.majorproject.Models.NotificationStatus;
 import jakarta.transaction.Transactional;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
@@ -14,12 +16,16 @@ import java.util.List;
 public interface NotificationRepository extends JpaRepository<Notification,Integer> {
 
 
-    List<Notification> findByUserId(Integer userId);
-
+    /**
+     * Marks up to {@code limit} of the user's UNREAD notifications as READ and returns how many changed.
+     * Only unread rows are touched (found through idx_notifications_user_status), and the LIMIT keeps each
+     * statement's row locks and undo log small, so callers repeat it until fewer than {@code limit} change.
+     */
     @Transactional
     @Modifying
-    @Query("update Notification n set n.status = :status where n.userId = :userId")
-    int updateNotifications(@Param("userId") Integer userId, @Param("status") NotificationStatus status);
+    @Query(value = "update notifications set status = 'READ', updated_at = current_date " +
+            "where user_id = :userId and status = 'UNREAD' limit :limit", nativeQuery = true)
+    int updateNotifications(@Param("userId") Integer userId, @Param("limit") int limit);
 
     @Transactional
     @Modifying
@@ -28,4 +34,17 @@ public interface NotificationRepository extends JpaRepository<Notification,Integ
                                  @Param("status") NotificationStatus status);
 
     List<Notification> findByUserIdOrderByCreatedAtDesc(Integer userId);
+
+    // First inbox page, newest first by id (ids grow with insertion; createdAt only has day resolution);
+    // served from idx_notifications_user_id
+    @Query("select new com.example.majorproject.Dtos.NotificationDto(n.id, n.message, n.type, n.status, n.createdAt) " +
+            "from Notification n where n.userId = :userId order by n.id desc")
+    List<NotificationDto> findInbox(@Param("userId") Integer userId, Pageable page);
+
+    // Next inbox page: the rows with an id below the cursor, seeking the index instead of OFFSET
+    @Query("select new com.example.majorproject.Dtos.NotificationDto(n.id, n.message, n.type, n.status, n.createdAt) " +
+            "from Notification n where n.userId = :userId and n.id < :id order by n.id desc")
+    List<NotificationDto> findInboxAfter(@Param("userId") Integer userId, @Param("id") Integer id, Pageable page);
+
+    long countByUserIdAndStatus(Integer userId, NotificationStatus status);
 }
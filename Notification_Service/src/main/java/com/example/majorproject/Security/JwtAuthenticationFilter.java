@@ -1,5 +1,6 @@
 package com.example.majorproject.Security;
 
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -34,8 +35,10 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         }
 
         String jwt = authHeader.substring(7);
-        String email = jwtService.extractUsername(jwt);
-        Integer userId = jwtService.extractUserId(jwt);
+        // One verification per request; repeat requests with the same token hit the cache
+        Claims claims = jwtService.verify(jwt);
+        String email = claims.getSubject();
+        Integer userId = claims.get("userId", Integer.class);
 
         if (email != null && SecurityContextHolder.getContext().getAuthentication() == null) {
             Map<String, Object> principal = new HashMap<>();
@@ -0,0 +1,70 @@
+package com.example.majorproject.Services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Field codec for the cached {@code WALLET:} and {@code USER:} hashes.
+ * <p>
+ * In the {@link Format#PLAIN} format a field is its plain string: numbers as decimal text (so Lua can
+ * {@code HINCRBY} them), text as-is and null as the empty string. Hashes written earlier hold
+ * GenericJackson2JsonRedisSerializer output, which is the same for numbers and null but quotes text,
+ * so decoding also accepts a JSON string; plain text that itself starts with a quote is written
+ * quoted to stay unambiguous. {@link Format#JSON} keeps writing the old form for as long as
+ * instances that only read it are still deployed.
+ */
+public final class HashFields {
+
+    public enum Format {
+        PLAIN, JSON
+    }
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private HashFields() {
+    }
+
+    public static String encode(Object value, Format format) {
+        if (value == null) {
+            return "";
+        }
+        if (value instanceof Number) {
+            return value.toString();
+        }
+        String text = value.toString();
+        return format == Format.JSON || text.startsWith("\"") ? quote(text) : text;
+    }
+
+    public static String text(Object field) {
+        String raw = (String) field;
+        if (raw == null || raw.isEmpty()) {
+            return null;
+        }
+        if (raw.charAt(0) != '"') {
+            return raw;
+        }
+        try {
+            return JSON.readValue(raw, String.class);
+        } catch (JsonProcessingException e) {
+            return raw;
+        }
+    }
+
+    public static Integer toInteger(Object field) {
+        String raw = (String) field;
+        return raw == null || raw.isEmpty() ? null : Integer.valueOf(raw);
+    }
+
+    public static Long toLong(Object field) {
+        String raw = (String) field;
+        return raw == null || raw.isEmpty() ? null : Long.valueOf(raw);
+    }
+
+    private static String quote(String text) {
+        try {
+            return JSON.writeValueAsString(text);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Cannot encode cache field", e);
+        }
+    }
+}
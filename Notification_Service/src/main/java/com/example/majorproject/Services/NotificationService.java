@@ -1,19 +1,22 @@
 package com.example.majorproject.Services;
 
+import com.example.majorproject.Dtos.NotificationDto;
+import com.example.majorproject.Dtos.NotificationPageDto;
+import com.example.majorproject.Events.UserCreatedEvent;
+import com.example.majorproject.Events.WalletUpdatedEvent;
 import com.example.majorproject.Models.Notification;
 import com.example.majorproject.Models.NotificationStatus;
 import com.example.majorproject.Models.NotificationType;
 import com.example.majorproject.Repositories.NotificationRepository;
-import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
-import org.json.simple.parser.ParseException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
 import java.nio.file.AccessDeniedException;
 import java.util.*;
 
@@ -23,84 +26,109 @@ public class NotificationService {
 
     private static final Logger logger = LoggerFactory.getLogger(NotificationService.class);
 
+    public static final int MAX_PAGE_SIZE = 100;
 
-    private final String NOTIFICATION_STATUS_TOPIC="notification-status";
-
-    JSONParser jsonParser = new JSONParser();
+    private static final String UNKNOWN_USER = "Unknown User";
 
 
     @Autowired
     NotificationRepository notificationRepository;
 
     @Autowired
-    RedisTemplate  redisTemplate;
-
+    UserDirectory userDirectory;
 
+    @Autowired
+    UnreadCountCacheService unreadCountCacheService;
 
-    @KafkaListener(topics = "${kafka.topic.user-created}", groupId = "notification-service-group")
-    public void userCreated(String msg) throws ParseException {
-        JSONObject data;
-        try{
-            data=(JSONObject) jsonParser.parse(msg);
-        }
-        catch (ParseException e){
-            logger.error("Failed to parse notification-status event: {}", msg, e);
-            return;
+    @Autowired
+    NotificationWriter notificationWriter;
+
+    @Value("${notification.mark-read.chunk-size:5000}")
+    private int markReadChunkSize;
+
+
+
+    // ✅ A whole poll of user-created events becomes one batch insert; offsets commit after it returns
+    @KafkaListener(topics = "${kafka.topic.user-created}", groupId = "notification-service-group",
+            containerFactory = "batchKafkaListenerContainerFactory")
+    public void usersCreated(List<UserCreatedEvent> events) {
+        userDirectory.add(events);
+        // Only events from older producers come without a name
+        Map<Integer, String> names = userDirectory.names(events.stream()
+                .filter(event -> event != null && event.name() == null)
+                .map(UserCreatedEvent::id)
+                .toList());
+
+        List<Notification> notifications = new ArrayList<>(events.size());
+        for (UserCreatedEvent event : events) {
+            Notification greeting = greeting(event, names);
+            if (greeting != null) {
+                notifications.add(greeting);
+            }
         }
-        // Safely handle number conversion
-        Long userIdLong = (Long) data.get("id");
-        Integer userId = userIdLong.intValue();
-
-        Map<Object, Object> profile = redisTemplate.opsForHash().entries("USER:" + userId);
+        notificationWriter.write(notifications);
+    }
 
-        if(profile.isEmpty()){
-            logger.error("No user profile found in Redis for userId={}", userId);
-                return;
+    private Notification greeting(UserCreatedEvent event, Map<Integer, String> names) {
+        // Records that failed to deserialize arrive as null
+        if (event == null || event.id() == null) {
+            logger.error("Dropping user-created event without id: {}", event);
+            return null;
         }
-        String name=(String)profile.get("name");
-        String message = "Welcome to WalletWave, " + name + "! 🎉";
-        Notification notification = Notification.builder()
+        Integer userId = event.id();
+
+        String name = event.name() != null ? event.name() : names.get(userId);
+        String message = name != null
+                ? "Welcome to WalletWave, " + name + "! 🎉"
+                : "Welcome to WalletWave! 🎉";
+        return Notification.builder()
                 .userId(userId)
                 .message(message)
                 .type(NotificationType.USER)
                 .status(NotificationStatus.UNREAD)
                 .build();
-        notificationRepository.save(notification);
-        logger.info("Greeting notification saved for userId={}, name={}", userId, name);
     }
 
 
-    @KafkaListener(topics = NOTIFICATION_STATUS_TOPIC, groupId = "wallet-updated-group")
-    public void walletUpdated(String msg) {
-        logger.info("Received notification-status event: {}", msg);
-        JSONObject data;
-        try {
-            data = (JSONObject) jsonParser.parse(msg);
-        } catch (ParseException e) {
-            logger.error("Failed to parse notification-status event: {}", msg, e);
-            return;
+    // ✅ A whole poll of notification-status events becomes one batch insert; offsets commit after it returns
+    @KafkaListener(topics = "${kafka.topic.notification-status}", groupId = "wallet-updated-group",
+            containerFactory = "batchKafkaListenerContainerFactory")
+    public void walletsUpdated(List<WalletUpdatedEvent> events) {
+        // One directory read for the whole poll
+        Set<Integer> userIds = new HashSet<>();
+        for (WalletUpdatedEvent event : events) {
+            if (event != null) {
+                userIds.add(event.sender());
+                userIds.add(event.receiver());
+            }
         }
+        Map<Integer, String> names = userDirectory.names(userIds);
 
-        Integer senderId = ((Number) data.get("sender")).intValue();
-        Integer receiverId = ((Number) data.get("receiver")).intValue();
-        Long amount = ((Number) data.get("amount")).longValue();
-        String status = data.get("status").toString().toUpperCase();
-        String reason = data.containsKey("reason") ? (String) data.get("reason") : null;
-
-        // Fetch profiles from Redis
-        Map<Object, Object> senderProfile = redisTemplate.opsForHash().entries("USER:" + senderId);
-        Map<Object, Object> receiverProfile = redisTemplate.opsForHash().entries("USER:" + receiverId);
+        List<Notification> notifications = new ArrayList<>(events.size() * 2);
+        for (WalletUpdatedEvent event : events) {
+            notifications.addAll(transferNotifications(event, names));
+        }
+        notificationWriter.write(notifications);
+        logger.info("Received {} notification-status events, stored {} notifications", events.size(), notifications.size());
+    }
 
-        if (senderProfile == null || senderProfile.isEmpty() ||
-                receiverProfile == null || receiverProfile.isEmpty()) {
-            logger.warn("⚠️ Missing Redis profile for senderId={} or receiverId={}, skipping notification", senderId, receiverId);
-            return;
+    private List<Notification> transferNotifications(WalletUpdatedEvent event, Map<Integer, String> names) {
+        if (event == null || event.sender() == null || event.receiver() == null || event.status() == null) {
+            logger.error("Dropping incomplete notification-status event: {}", event);
+            return List.of();
         }
 
-        if ("SUCCESS".equals(status)) {
-            String senderName = (String) senderProfile.get("name");
-            String receiverName = (String) receiverProfile.get("name");
+        Integer senderId = event.sender();
+        Integer receiverId = event.receiver();
+        Long amount = event.amount();
+        String status = event.status().toUpperCase();
+        String reason = event.reason();
 
+        // A user missing from the directory still gets the notification, just without the other party's name
+        String senderName = names.getOrDefault(senderId, UNKNOWN_USER);
+        String receiverName = names.getOrDefault(receiverId, UNKNOWN_USER);
+
+        if ("SUCCESS".equals(status)) {
             String senderMessage = "Your payment of $" + amount + " to " + receiverName + " was SUCCESSFUL.";
             Notification notifySender = Notification.builder()
                     .userId(senderId)
@@ -117,28 +145,20 @@ public class NotificationService {
                     .status(NotificationStatus.UNREAD)
                     .build();
 
-            notificationRepository.saveAll(Arrays.asList(notifySender, notifyReceiver));
-            logger.info("Saved 2 notifications for txnId={}", data.get("externalTransactionId"));
-
+            return List.of(notifySender, notifyReceiver);
         }
         else if ("FAILED".equals(status)) {
-            String receiverName = receiverProfile.containsKey("name")
-                    ? (String) receiverProfile.get("name")
-                    : "Unknown User";
-
             String message = "Your payment of $" + amount + " to " + receiverName + " FAILED."
                     + (reason != null ? " Reason: " + reason : "");
 
-            Notification notification = Notification.builder()
+            return List.of(Notification.builder()
                     .userId(senderId)
                     .message(message)
                     .type(NotificationType.TRANSACTION)
                     .status(NotificationStatus.UNREAD)
-                    .build();
-
-            notificationRepository.save(notification);
-            logger.info("Saved 1 notification for txnId={}", data.get("externalTransactionId"));
+                    .build());
         }
+        return List.of();
     }
 
 
@@ -149,6 +169,52 @@ public class NotificationService {
         return notificationRepository.findByUserIdOrderByCreatedAtDesc(userId);
     }
 
+    /**
+     * One page of the user's inbox, newest first. {@code cursor} is the {@code nextCursor} of the
+     * previous page (null for the first page): an opaque encoding of the last notification id returned.
+     * Pages are ordered by id, which grows with insertion, because createdAt only has day resolution.
+     * Each page is a bounded index seek on (userId, id), so its cost does not grow with the size of the history.
+     */
+    public NotificationPageDto getInbox(Integer userId, String cursor, int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        // One extra row tells whether there is a next page
+        PageRequest page = PageRequest.of(0, limit + 1);
+        List<NotificationDto> rows;
+        if (cursor == null || cursor.isBlank()) {
+            rows = notificationRepository.findInbox(userId, page);
+        } else {
+            rows = notificationRepository.findInboxAfter(userId, decodeCursor(cursor), page);
+        }
+
+        if (rows.size() <= limit) {
+            return new NotificationPageDto(rows, null);
+        }
+        List<NotificationDto> items = rows.subList(0, limit);
+        NotificationDto last = items.get(limit - 1);
+        return new NotificationPageDto(items, encodeCursor(last.getId()));
+    }
+
+    // ✅ Unread notifications for the badge: the cached counter, counted on idx_notifications_user_status on a miss
+    public long countUnread(Integer userId) {
+        return unreadCountCacheService.getUnreadCount(userId,
+                () -> notificationRepository.countByUserIdAndStatus(userId, NotificationStatus.UNREAD));
+    }
+
+    private static String encodeCursor(Integer id) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(id.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Integer decodeCursor(String cursor) {
+        try {
+            return Integer.valueOf(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            // Also covers NumberFormatException and bad Base64
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+
     // ✅ Mark single notification as READ
     public Notification markAsRead(Integer notificationId, Integer userId) throws AccessDeniedException {
         Notification notification = notificationRepository.findById(notificationId)
@@ -158,15 +224,29 @@ public class NotificationService {
             throw new AccessDeniedException("You cannot modify someone else’s notification");
         }
 
+        // Already read: nothing to write
+        if (notification.getStatus() != NotificationStatus.UNREAD) {
+            return notification;
+        }
         notification.setStatus(NotificationStatus.READ);
-        return notificationRepository.save(notification);
+        Notification saved = notificationRepository.save(notification);
+        unreadCountCacheService.adjust(userId, -1);
+        return saved;
     }
 
-    // ✅ Mark all notifications for a user as READ
+    /**
+     * Marks all of the user's UNREAD notifications as READ with bulk UPDATEs of at most
+     * {@code notification.mark-read.chunk-size} rows each, so nothing is loaded into memory and no
+     * single statement locks a huge inbox. Returns how many notifications changed.
+     */
     public int markAllAsRead(Integer userId) {
-        List<Notification> notification=this.notificationRepository.findByUserId(userId);
-        notification.forEach(n -> n.setStatus(NotificationStatus.READ));
-        notificationRepository.saveAll(notification);
-        return notification.size();
+        int total = 0;
+        int updated;
+        do {
+            updated = notificationRepository.updateNotifications(userId, markReadChunkSize);
+            total += updated;
+        } while (updated == markReadChunkSize);
+        unreadCountCacheService.invalidate(userId);
+        return total;
     }
 }
\ No newline at end of file
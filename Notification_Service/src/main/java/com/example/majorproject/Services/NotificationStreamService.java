@@ -0,0 +1,201 @@
+package com.example.majorproject.Services;
+
+import com.example.majorproject.Dtos.NotificationDto;
+import com.example.majorproject.Models.Notification;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Pushes new notifications to connected clients over Server-Sent Events.
+ * <p>
+ * Each instance keeps the open streams of its own clients, per userId. Whichever instance stores a
+ * poll's notifications publishes them once on {@code notifications:stream}; every instance receives the
+ * message and writes each notification to the streams of its user, so a client gets it whichever
+ * instance it is connected to. Streams are async requests, so an idle client holds no request thread,
+ * and a heartbeat comment keeps proxies from closing quiet streams and drops dead ones.
+ * <p>
+ * The Redis listener thread (shared with near-cache invalidations) only queues events. Each stream has a
+ * bounded queue drained by a virtual thread, so a slow client only delays itself; a client that falls
+ * {@code notification.stream.buffer} events behind is completed and reconnects to read the rest from the inbox.
+ */
+@Service
+public class NotificationStreamService {
+
+    private static final Logger logger = LoggerFactory.getLogger(NotificationStreamService.class);
+
+    static final String CHANNEL = "notifications:stream";
+
+    private final Map<Integer, Set<Stream>> streams = new ConcurrentHashMap<>();
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final long timeoutMs;
+    private final int bufferSize;
+    private final ScheduledExecutorService heartbeat;
+    private final ExecutorService senders = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("notification-stream-", 0).factory());
+
+    // One client connection: events wait in a bounded queue and at most one sender drains it at a time
+    private final class Stream {
+        final Integer userId;
+        final SseEmitter emitter;
+        final BlockingQueue<SseEmitter.SseEventBuilder> pending;
+        final AtomicBoolean draining = new AtomicBoolean();
+
+        Stream(Integer userId, SseEmitter emitter) {
+            this.userId = userId;
+            this.emitter = emitter;
+            this.pending = new ArrayBlockingQueue<>(bufferSize);
+        }
+
+        void enqueue(SseEmitter.SseEventBuilder event) {
+            if (!pending.offer(event)) {
+                logger.info("Closing notification stream of userId={}: client is {} events behind", userId, bufferSize);
+                remove(this);
+                emitter.complete();
+                return;
+            }
+            if (draining.compareAndSet(false, true)) {
+                senders.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            do {
+                SseEmitter.SseEventBuilder event;
+                while ((event = pending.poll()) != null) {
+                    try {
+                        emitter.send(event);
+                    } catch (IOException | IllegalStateException e) {
+                        // Client went away or the stream already completed
+                        remove(this);
+                        pending.clear();
+                    }
+                }
+                draining.set(false);
+                // An event queued after the last poll but before the flag was cleared still gets sent
+            } while (!pending.isEmpty() && draining.compareAndSet(false, true));
+        }
+    }
+
+    public NotificationStreamService(StringRedisTemplate redisTemplate,
+                                     RedisMessageListenerContainer listenerContainer,
+                                     ObjectMapper objectMapper,
+                                     MeterRegistry meterRegistry,
+                                     @Value("${notification.stream.timeout:30m}") Duration timeout,
+                                     @Value("${notification.stream.heartbeat:25s}") Duration heartbeatInterval,
+                                     @Value("${notification.stream.buffer:100}") int bufferSize) {
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.timeoutMs = timeout.toMillis();
+        this.bufferSize = bufferSize;
+
+        Gauge.builder("notification.stream.connections", streams,
+                        s -> s.values().stream().mapToInt(Set::size).sum())
+                .description("Open notification streams on this instance")
+                .register(meterRegistry);
+        listenerContainer.addMessageListener((message, pattern) -> deliver(message.getBody()), new ChannelTopic(CHANNEL));
+
+        this.heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "notification-stream-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMs = heartbeatInterval.toMillis();
+        heartbeat.scheduleAtFixedRate(this::sendHeartbeats, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        heartbeat.shutdownNow();
+        senders.shutdownNow();
+        streams.values().forEach(open -> open.forEach(stream -> stream.emitter.complete()));
+    }
+
+    // ✅ Opens a stream for the user; it ends on timeout (the client reconnects) or when the client leaves
+    public SseEmitter subscribe(Integer userId) {
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        register(userId, emitter).enqueue(SseEmitter.event().comment("connected"));
+        return emitter;
+    }
+
+    Stream register(Integer userId, SseEmitter emitter) {
+        Stream stream = new Stream(userId, emitter);
+        streams.computeIfAbsent(userId, id -> new CopyOnWriteArraySet<>()).add(stream);
+        emitter.onCompletion(() -> remove(stream));
+        emitter.onTimeout(() -> remove(stream));
+        emitter.onError(e -> remove(stream));
+        return stream;
+    }
+
+    // ✅ One PUBLISH per stored poll; the notifications are already committed, so failures are only logged
+    public void publish(List<Notification> notifications) {
+        if (notifications.isEmpty()) {
+            return;
+        }
+        try {
+            redisTemplate.convertAndSend(CHANNEL, objectMapper.writeValueAsString(notifications));
+        } catch (JsonProcessingException | RuntimeException e) {
+            logger.warn("Could not publish {} notifications to streams, clients will see them in the inbox",
+                    notifications.size(), e);
+        }
+    }
+
+    private void deliver(byte[] body) {
+        List<Notification> notifications;
+        try {
+            notifications = objectMapper.readValue(body, new TypeReference<List<Notification>>() { });
+        } catch (IOException e) {
+            logger.warn("Ignoring malformed message on {}", CHANNEL, e);
+            return;
+        }
+        for (Notification notification : notifications) {
+            Set<Stream> open = streams.get(notification.getUserId());
+            if (open == null) {
+                continue;
+            }
+            NotificationDto event = new NotificationDto(notification.getId(), notification.getMessage(),
+                    notification.getType(), notification.getStatus(), notification.getCreatedAt());
+            for (Stream stream : open) {
+                stream.enqueue(SseEmitter.event().name("notification").data(event));
+            }
+        }
+    }
+
+    private void sendHeartbeats() {
+        streams.values().forEach(open -> open.forEach(stream -> stream.enqueue(SseEmitter.event().comment("heartbeat"))));
+    }
+
+    private void remove(Stream stream) {
+        streams.computeIfPresent(stream.userId, (id, open) -> {
+            open.remove(stream);
+            return open.isEmpty() ? null : open;
+        });
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.majorproject.Services;
+
+import com.example.majorproject.Models.Notification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Inserts the notifications built from one Kafka poll with JDBC batch inserts in a single transaction.
+ * <p>
+ * Rows go through JdbcTemplate rather than {@code saveAll}: with IDENTITY ids Hibernate inserts one row
+ * per statement, while a JDBC batch with {@code rewriteBatchedStatements=true} on the MySQL URL is sent as
+ * multi-row INSERTs, and their generated ids come back in the same round trip.
+ * Listeners call this before returning, so the poll's offsets are only committed once its notifications
+ * are stored. A failed write retries the whole poll: for as long as a transient DB failure lasts, otherwise
+ * {@code notification.kafka.batch.dead-letter-attempts} times before the poll's records go to {@code <topic>.DLT}
+ * (see NotificationConfig). Stored notifications are then pushed to connected clients through
+ * {@link NotificationStreamService}.
+ */
+@Service
+public class NotificationWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(NotificationWriter.class);
+
+    private static final String INSERT_SQL = "insert into notifications (user_id, message, type, status, created_at, updated_at) " +
+            "values (?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final UnreadCountCacheService unreadCountCacheService;
+    private final NotificationStreamService notificationStreamService;
+    private final int batchSize;
+
+    public NotificationWriter(JdbcTemplate jdbcTemplate,
+                              PlatformTransactionManager transactionManager,
+                              UnreadCountCacheService unreadCountCacheService,
+                              NotificationStreamService notificationStreamService,
+                              @Value("${notification.writer.batch-size:500}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.unreadCountCacheService = unreadCountCacheService;
+        this.notificationStreamService = notificationStreamService;
+        this.batchSize = batchSize;
+    }
+
+    public void write(List<Notification> notifications) {
+        if (notifications.isEmpty()) {
+            return;
+        }
+        Date now = new Date(System.currentTimeMillis());
+        notifications.forEach(notification -> notification.setCreatedAt(now));
+        transactionTemplate.executeWithoutResult(status -> {
+            for (int from = 0; from < notifications.size(); from += batchSize) {
+                insertBatch(notifications.subList(from, Math.min(notifications.size(), from + batchSize)), now);
+            }
+        });
+
+        // One counter update per user, after the rows are committed
+        Map<Integer, Long> unreadPerUser = new LinkedHashMap<>();
+        for (Notification notification : notifications) {
+            unreadPerUser.merge(notification.getUserId(), 1L, Long::sum);
+        }
+        unreadPerUser.forEach(unreadCountCacheService::adjust);
+        notificationStreamService.publish(notifications);
+        logger.info("Inserted {} notifications for {} users", notifications.size(), unreadPerUser.size());
+    }
+
+    private void insertBatch(List<Notification> batch, Date now) {
+        KeyHolder keys = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(con -> con.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        Notification notification = batch.get(i);
+                        ps.setInt(1, notification.getUserId());
+                        ps.setString(2, notification.getMessage());
+                        ps.setString(3, notification.getType().name());
+                        ps.setString(4, notification.getStatus().name());
+                        ps.setDate(5, now);
+                        ps.setDate(6, now);
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return batch.size();
+                    }
+                }, keys);
+
+        // Keys come back in insert order, one per row
+        List<Map<String, Object>> generated = keys.getKeyList();
+        for (int i = 0; i < generated.size() && i < batch.size(); i++) {
+            batch.get(i).setId(((Number) generated.get(i).values().iterator().next()).intValue());
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.majorproject.Services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+/**
+ * Unread notification count per user, cached in Redis as {@code NOTIFICATION_UNREAD:<userId>}.
+ * <p>
+ * The count is loaded from MySQL on a miss and then kept up to date in place: new notifications add
+ * to it and reads subtract from it, while mark-all-read drops it so the next read recounts (an index-only
+ * count of no rows). Adjustments only apply to a counter that is already cached, so a missing counter is
+ * never started from a wrong base. The TTL bounds the drift left by a write racing the initial load.
+ */
+@Service
+public class UnreadCountCacheService {
+
+    private static final Logger logger = LoggerFactory.getLogger(UnreadCountCacheService.class);
+
+    private static final String UNREAD_KEY_PREFIX = "NOTIFICATION_UNREAD:";
+
+    private static final RedisScript<Long> ADJUST_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/adjust-unread.lua"), Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final Duration ttl;
+
+    public UnreadCountCacheService(StringRedisTemplate redisTemplate,
+                                   @Value("${notification.unread-count.ttl:10m}") Duration ttl) {
+        this.redisTemplate = redisTemplate;
+        this.ttl = ttl;
+    }
+
+    // ✅ Cached count, or the loader's count (then cached) on a miss
+    public long getUnreadCount(Integer userId, LongSupplier loader) {
+        String cached = redisTemplate.opsForValue().get(key(userId));
+        if (cached != null) {
+            return Long.parseLong(cached);
+        }
+        long count = loader.getAsLong();
+        redisTemplate.opsForValue().set(key(userId), Long.toString(count), ttl);
+        return count;
+    }
+
+    // The notifications are already committed, so a Redis failure here must not fail the caller
+    public void adjust(Integer userId, long delta) {
+        try {
+            redisTemplate.execute(ADJUST_SCRIPT, List.of(key(userId)), Long.toString(delta));
+        } catch (RuntimeException e) {
+            logger.warn("Could not adjust unread count for userId={}, it catches up within {}", userId, ttl, e);
+        }
+    }
+
+    // Called after the updates are committed: on a Redis failure the stale count expires with its TTL
+    public void invalidate(Integer userId) {
+        try {
+            redisTemplate.delete(key(userId));
+        } catch (RuntimeException e) {
+            logger.warn("Could not drop unread count for userId={}, it catches up within {}", userId, ttl, e);
+        }
+    }
+
+    private static String key(Integer userId) {
+        return UNREAD_KEY_PREFIX + userId;
+    }
+}
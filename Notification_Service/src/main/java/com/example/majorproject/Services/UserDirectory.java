@@ -0,0 +1,177 @@
+package com.example.majorproject.Services;
+
+import com.example.majorproject.Events.UserCreatedEvent;
+import com.example.majorproject.Events.UserUpdatedEvent;
+import com.example.majorproject.Models.DirectoryUser;
+import com.example.majorproject.Repositories.DirectoryUserRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * User names for notification messages, owned by this service so that building a notification needs
+ * neither User_Service nor Redis.
+ * <p>
+ * Names arrive with the events: user-created adds a user (never replacing a name, in case a rename was
+ * seen first) and user-updated renames one. They are stored in the {@code user_directory} table and read
+ * through an in-process cache, so a poll's names are one bulk primary-key read at most. One shared group stores
+ * the renames (from the earliest offset, so renames published while every instance was down are still applied),
+ * then publishes the renamed ids on {@code user-directory:renamed} so every instance drops them from its cache;
+ * the cache TTL bounds staleness if that message is missed.
+ * Users created before their events carried names are looked up once in the {@code USER:} hashes and then stored.
+ */
+@Service
+public class UserDirectory {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserDirectory.class);
+
+    private static final String INSERT_SQL = "insert ignore into user_directory (id, name) values (?, ?)";
+    private static final String UPSERT_SQL = "insert into user_directory (id, name) values (?, ?) " +
+            "on duplicate key update name = values(name)";
+
+    static final String RENAMED_CHANNEL = "user-directory:renamed";
+
+    private final DirectoryUserRepository directoryUserRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final UserProfileCacheService userProfileCacheService;
+    private final StringRedisTemplate redisTemplate;
+    private final Cache<Integer, String> names;
+    private final Counter backfills;
+
+    public UserDirectory(DirectoryUserRepository directoryUserRepository,
+                         JdbcTemplate jdbcTemplate,
+                         UserProfileCacheService userProfileCacheService,
+                         StringRedisTemplate redisTemplate,
+                         RedisMessageListenerContainer listenerContainer,
+                         MeterRegistry meterRegistry,
+                         @Value("${notification.user-directory.l1.maximum-size:500000}") long l1MaximumSize,
+                         @Value("${notification.user-directory.l1.ttl:10m}") Duration l1Ttl) {
+        this.directoryUserRepository = directoryUserRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.userProfileCacheService = userProfileCacheService;
+        this.redisTemplate = redisTemplate;
+        this.names = Caffeine.newBuilder()
+                .maximumSize(l1MaximumSize)
+                .expireAfterWrite(l1Ttl)
+                .recordStats()
+                .build();
+        listenerContainer.addMessageListener((message, pattern) -> onRenamed(message.getBody()),
+                new ChannelTopic(RENAMED_CHANNEL));
+        CaffeineCacheMetrics.monitor(meterRegistry, names, "user-directory");
+        this.backfills = Counter.builder("notification.user.directory.backfill")
+                .description("Names not in the directory that had to be read from the USER: hashes")
+                .register(meterRegistry);
+    }
+
+    // ✅ Names for the given users; a user whose name is nowhere to be found is left out
+    public Map<Integer, String> names(Collection<Integer> userIds) {
+        Set<Integer> ids = new HashSet<>(userIds);
+        ids.remove(null);
+        Map<Integer, String> found = new HashMap<>(names.getAllPresent(ids));
+        if (found.size() == ids.size()) {
+            return found;
+        }
+
+        Set<Integer> missing = new HashSet<>(ids);
+        missing.removeAll(found.keySet());
+        for (DirectoryUser user : directoryUserRepository.findAllById(missing)) {
+            found.put(user.getId(), user.getName());
+            names.put(user.getId(), user.getName());
+            missing.remove(user.getId());
+        }
+        List<UserCreatedEvent> backfilled = new ArrayList<>();
+        try {
+            for (Integer userId : missing) {
+                if (userProfileCacheService.getProfile(userId).get("name") instanceof String name) {
+                    backfilled.add(new UserCreatedEvent(userId, name));
+                    found.put(userId, name);
+                }
+            }
+        } catch (RuntimeException e) {
+            // Redis down: those users go without a name rather than holding up the poll
+            logger.warn("Could not read names of {} users missing from the directory", missing.size(), e);
+        }
+        if (!backfilled.isEmpty()) {
+            backfills.increment(backfilled.size());
+            add(backfilled);
+        }
+        return found;
+    }
+
+    // Stores the names of new users; an existing entry is kept, as it can only be newer
+    public void add(List<UserCreatedEvent> events) {
+        List<Object[]> rows = events.stream()
+                .filter(event -> event != null && event.id() != null && event.name() != null)
+                .map(event -> new Object[]{event.id(), event.name()})
+                .toList();
+        if (rows.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(INSERT_SQL, rows);
+        rows.forEach(row -> names.asMap().putIfAbsent((Integer) row[0], (String) row[1]));
+    }
+
+    // ✅ One instance stores each rename, then every instance's cache drops the renamed users
+    @KafkaListener(topics = "${kafka.topic.user-updated}", groupId = "notification-user-directory",
+            properties = "auto.offset.reset=earliest",
+            containerFactory = "batchKafkaListenerContainerFactory")
+    public void usersUpdated(List<UserUpdatedEvent> events) {
+        // Renames of one user share a partition, so the last one in the poll wins
+        Map<Integer, String> renames = new HashMap<>();
+        for (UserUpdatedEvent event : events) {
+            if (event == null || event.id() == null || event.name() == null) {
+                logger.error("Dropping incomplete user-updated event: {}", event);
+                continue;
+            }
+            renames.put(event.id(), event.name());
+        }
+        if (renames.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(UPSERT_SQL, renames.entrySet().stream()
+                .map(rename -> new Object[]{rename.getKey(), rename.getValue()})
+                .toList());
+        names.putAll(renames);
+        logger.debug("Applied {} renames", renames.size());
+        try {
+            redisTemplate.convertAndSend(RENAMED_CHANNEL,
+                    renames.keySet().stream().map(String::valueOf).collect(Collectors.joining(",")));
+        } catch (RuntimeException e) {
+            // The renames are stored; other instances pick them up once their cached names expire
+            logger.warn("Could not announce {} renames to other instances", renames.size(), e);
+        }
+    }
+
+    private void onRenamed(byte[] body) {
+        String message = new String(body, StandardCharsets.UTF_8);
+        for (String id : message.split(",")) {
+            try {
+                names.invalidate(Integer.valueOf(id.trim()));
+            } catch (NumberFormatException e) {
+                logger.warn("Ignoring malformed message on {}: {}", RENAMED_CHANNEL, message);
+            }
+        }
+    }
+}
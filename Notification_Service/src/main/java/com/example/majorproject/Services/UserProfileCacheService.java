@@ -0,0 +1,55 @@
+package com.example.majorproject.Services;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Read-only view of the {@code USER:<id>} hashes that User_Service maintains, with an L1 in front.
+ * User_Service publishes on the same {@code near-cache:users} channel whenever it rewrites a profile.
+ * Fields are decoded to text with {@link HashFields}, which reads both the plain and the older JSON form.
+ */
+@Service
+public class UserProfileCacheService {
+
+    private static final String USER_KEY_PREFIX = "USER:";
+
+    private final StringRedisTemplate redisTemplate;
+    private final NearCache<Map<Object, Object>> nearCache;
+
+    public UserProfileCacheService(StringRedisTemplate redisTemplate,
+                                   RedisMessageListenerContainer listenerContainer,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${notification.cache.l1.maximum-size:100000}") long l1MaximumSize,
+                                   @Value("${notification.cache.l1.ttl:60s}") Duration l1Ttl,
+                                   @Value("${notification.cache.negative-ttl:10s}") Duration negativeTtl) {
+        this.redisTemplate = redisTemplate;
+        this.nearCache = new NearCache<>("users", l1MaximumSize, l1Ttl, negativeTtl,
+                redisTemplate, listenerContainer, meterRegistry);
+    }
+
+    // ✅ Profile hash for the user, or an empty map when Redis has none
+    public Map<Object, Object> getProfile(Integer userId) {
+        Map<Object, Object> profile = nearCache.get(userId, id -> {
+            Map<Object, Object> entries = redisTemplate.opsForHash().entries(USER_KEY_PREFIX + id);
+            if (entries.isEmpty()) {
+                return null;
+            }
+            Map<Object, Object> decoded = new HashMap<>();
+            entries.forEach((field, value) -> {
+                String text = HashFields.text(value);
+                if (text != null) {
+                    decoded.put(field, text);
+                }
+            });
+            return Map.copyOf(decoded);
+        });
+        return profile == null ? Map.of() : profile;
+    }
+}
@@ -0,0 +1,11 @@
+-- Adds ARGV[1] to the cached unread counter KEYS[1], only if it is cached, never going below 0.
+-- Returns the new count, or -1 when the counter is not cached (it is loaded from MySQL on next read)
+if redis.call('EXISTS', KEYS[1]) == 0 then
+    return -1
+end
+local count = redis.call('INCRBY', KEYS[1], ARGV[1])
+if count < 0 then
+    redis.call('SET', KEYS[1], 0, 'KEEPTTL')
+    return 0
+end
+return count
@@ -1,11 +1,14 @@
 package com.example.majorproject.Services;
 
 
+import com.example.majorproject.Dtos.NotificationDto;
+import com.example.majorproject.Dtos.NotificationPageDto;
+import com.example.majorproject.Events.UserCreatedEvent;
+import com.example.majorproject.Events.WalletUpdatedEvent;
 import com.example.majorproject.Models.Notification;
 import com.example.majorproject.Models.NotificationStatus;
 import com.example.majorproject.Models.NotificationType;
 import com.example.majorproject.Repositories.NotificationRepository;
-import org.json.simple.parser.ParseException;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -14,13 +17,16 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.mockito.junit.MockitoJUnitRunner;
-import org.springframework.data.redis.core.HashOperations;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.nio.file.AccessDeniedException;
 import java.util.*;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -33,146 +39,164 @@ public class NotificationServiceTest {
     private NotificationRepository notificationRepository;
 
     @Mock
-    private RedisTemplate redisTemplate;
+    private UserDirectory userDirectory;
 
     @Mock
-    private HashOperations hashOperations;
+    private UnreadCountCacheService unreadCountCacheService;
+
+    @Mock
+    private NotificationWriter notificationWriter;
 
 
     @Before
     public void setUp() {
         MockitoAnnotations.openMocks(this);
-        when(redisTemplate.opsForHash()).thenReturn(hashOperations);
     }
 
 
     @Test
-    public void userCreatedSuccessfully() throws ParseException {
-        String msg = "{ \"id\": 1 }";
-
-        // Mock Redis user profile
-        Map<Object, Object> profile = new HashMap<>();
-        profile.put("name", "Alice");
-        when(hashOperations.entries("USER:1")).thenReturn(profile);
+    public void userCreatedSuccessfully() {
+        UserCreatedEvent event = new UserCreatedEvent(1, "Alice");
 
-        when(notificationRepository.save(any(Notification.class))).thenReturn(null);
+        notificationService.usersCreated(List.of(event));
 
+        verify(userDirectory, times(1)).add(List.of(event));
+        verify(notificationWriter, times(1)).write(argThat(notifications -> notifications.size() == 1
+                && notifications.get(0).getMessage().contains("Alice")));
 
 
-        notificationService.userCreated(msg);
 
-        verify(notificationRepository, times(1)).save(any(Notification.class));
+    }
 
+    @Test
+    public void userCreatedWithoutName_usesDirectory() {
+        // Event from a producer that does not send names yet
+        UserCreatedEvent event = new UserCreatedEvent(1, null);
+        when(userDirectory.names(List.of(1))).thenReturn(Map.of(1, "Alice"));
 
+        notificationService.usersCreated(List.of(event));
 
+        verify(notificationWriter, times(1)).write(argThat(notifications -> notifications.size() == 1
+                && notifications.get(0).getMessage().contains("Alice")));
     }
 
     @Test
-    public void userProfileIsEmpty() throws ParseException {
-        String msg = "{ \"id\": 1 }";
+    public void userNameUnknown_stillGreeted() {
+        UserCreatedEvent event = new UserCreatedEvent(1, null);
+        when(userDirectory.names(List.of(1))).thenReturn(Map.of());
 
+        notificationService.usersCreated(List.of(event));
 
-        Map<Object, Object> profile = new HashMap<>();
-        when(hashOperations.entries("USER:1")).thenReturn(profile);
-
+        verify(notificationWriter, times(1)).write(argThat(notifications -> notifications.size() == 1
+                && notifications.get(0).getMessage().equals("Welcome to WalletWave! 🎉")));
+    }
 
+    @Test
+    public void userCreatedWithoutId() {
+        UserCreatedEvent event = new UserCreatedEvent(null, null);
 
-        notificationService.userCreated(msg);
 
-        verify(notificationRepository, times(0)).save(any(Notification.class));
+        notificationService.usersCreated(List.of(event));
 
+        verify(notificationWriter, times(1)).write(Collections.emptyList());
     }
 
+
     @Test
-    public void dataParsingException() throws ParseException {
-        String msg = "Invalid-json";
+    public void walletUpdatedSuccessfully() {
+        WalletUpdatedEvent event = new WalletUpdatedEvent(1, 2, 50L, "txn-123", "SUCCESS", null, null, null);
 
+        when(userDirectory.names(Set.of(1, 2))).thenReturn(Map.of(1, "Alice", 2, "Bob"));
 
-        notificationService.userCreated(msg);
+        notificationService.walletsUpdated(List.of(event));
 
-        verify(notificationRepository, times(0)).save(any(Notification.class));
+        verify(notificationWriter, times(1)).write(argThat(notifications -> notifications.size() == 2
+                && notifications.get(0).getMessage().contains("to Bob")
+                && notifications.get(1).getMessage().contains("from Alice")));
     }
 
+    @Test
+    public void walletsUpdated_wholePollIsOneWrite() {
+        when(userDirectory.names(any())).thenReturn(Map.of(1, "Alice"));
+        List<WalletUpdatedEvent> poll = List.of(
+                new WalletUpdatedEvent(1, 2, 50L, "txn-1", "SUCCESS", null, null, null),
+                new WalletUpdatedEvent(3, 4, 10L, "txn-2", "FAILED", "Insufficient balance", null, null),
+                new WalletUpdatedEvent(5, 6, 20L, "txn-3", "SUCCESS", null, null, null));
+
+        notificationService.walletsUpdated(poll);
+
+        // One directory lookup for every user in the poll
+        verify(userDirectory, times(1)).names(Set.of(1, 2, 3, 4, 5, 6));
+        verify(notificationWriter, times(1)).write(argThat(notifications -> notifications.size() == 5));
+    }
 
     @Test
-    public void walletUpdatedSuccessfully() throws ParseException {
-        String msg = "{ \"sender\": 1, " +
-                "\"receiver\": 2, " +
-                "\"amount\": 50, " +
-                "\"status\": \"SUCCESS\", " +
-                "\"externalTransactionId\": \"txn-123\" }";
+    public void walletUpdatedFailed() {
+        WalletUpdatedEvent event = new WalletUpdatedEvent(1, 2, 50L, "txn-456", "FAILED", "Insufficient balance", null, null);
+
+        when(userDirectory.names(Set.of(1, 2))).thenReturn(Map.of(1, "Alice", 2, "Bob"));
 
-        Map<Object, Object> senderProfile = new HashMap<>();
-        senderProfile.put("name", "Alice");
-        Map<Object, Object> receiverProfile = new HashMap<>();
-        receiverProfile.put("name", "Bob");
+        notificationService.walletsUpdated(List.of(event));
 
-        when(hashOperations.entries("USER:1")).thenReturn(senderProfile);
-        when(hashOperations.entries("USER:2")).thenReturn(receiverProfile);
+        verify(notificationWriter, times(1)).write(argThat(notifications -> notifications.size() == 1
+                && notifications.get(0).getMessage().contains("Insufficient balance")));
 
-        notificationService.walletUpdated(msg);
 
-        verify(notificationRepository, times(1)).saveAll(anyList());
     }
 
     @Test
-    public void walletUpdatedFailed() throws ParseException {
-        String msg = "{ \"sender\": 1, " +
-                "\"receiver\": 2, " +
-                "\"amount\": 50, " +
-                "\"status\": \"FAILED\", " +
-                "\"reason\": \"Insufficient balance\", " +
-                "\"externalTransactionId\": \"txn-456\" }";
-
-        Map<Object, Object> senderProfile = new HashMap<>();
-        senderProfile.put("name", "Alice");
-        Map<Object, Object> receiverProfile = new HashMap<>();
-        receiverProfile.put("name", "Bob");
+    public void unknownUsers_stillNotified() {
+        WalletUpdatedEvent event = new WalletUpdatedEvent(1, 2, 50L, "txn-123", "SUCCESS", null, null, null);
 
-        when(hashOperations.entries("USER:1")).thenReturn(senderProfile);
-        when(hashOperations.entries("USER:2")).thenReturn(receiverProfile);
+        when(userDirectory.names(Set.of(1, 2))).thenReturn(Map.of());
 
-        notificationService.walletUpdated(msg);
+        notificationService.walletsUpdated(List.of(event));
 
-        verify(notificationRepository, times(1)).save(any(Notification.class));
+        verify(notificationWriter, times(1)).write(argThat(notifications -> notifications.size() == 2
+                && notifications.get(0).getMessage().contains("Unknown User")));
 
 
     }
 
     @Test
-    public void missingRedisProfile() throws ParseException {
-        String msg = "{ \"sender\": 1, " +
-                "\"receiver\": 2, " +
-                "\"amount\": 50, " +
-                "\"status\": \"SUCCESS\", " +
-                "\"externalTransactionId\": \"txn-123\" }";
+    public void testWalletUpdated_IncompleteEvent() {
+        WalletUpdatedEvent event = new WalletUpdatedEvent(1, null, 50L, "txn-123", "SUCCESS", null, null, null);
 
+        // Act
+        notificationService.walletsUpdated(List.of(event));
 
+        // Assert: nothing stored
+        verify(notificationWriter, times(1)).write(Collections.emptyList());
+    }
 
-        when(hashOperations.entries("USER:1")).thenReturn(Collections.emptyMap());
-        when(hashOperations.entries("USER:2")).thenReturn(Collections.emptyMap());
 
-        notificationService.walletUpdated(msg);
+    private NotificationDto inboxRow(Integer id, long createdAt) {
+        return new NotificationDto(id, "message " + id, NotificationType.TRANSACTION, NotificationStatus.UNREAD,
+                new java.sql.Date(createdAt));
+    }
 
-        verify(notificationRepository, never()).save(any());
-        verify(notificationRepository, never()).saveAll(anyList());
+    @Test
+    public void testGetInbox_pagesWithCursor() {
+        Integer userId = 1;
+        List<NotificationDto> firstRows = List.of(inboxRow(9, 2000L), inboxRow(8, 2000L), inboxRow(5, 1000L));
+        when(notificationRepository.findInbox(eq(userId), any(Pageable.class))).thenReturn(firstRows);
 
+        NotificationPageDto first = notificationService.getInbox(userId, null, 2);
 
-    }
+        Assert.assertEquals(List.of(9, 8), first.getItems().stream().map(NotificationDto::getId).toList());
+        Assert.assertNotNull(first.getNextCursor());
+        verify(notificationRepository).findInbox(userId, PageRequest.of(0, 3));
 
-    @Test
-    public void testWalletUpdated_InvalidJson() {
-        String msg = "not-a-json";
+        when(notificationRepository.findInboxAfter(eq(userId), any(), any(Pageable.class)))
+                .thenReturn(List.of(inboxRow(5, 1000L)));
 
-        // Act
-        notificationService.walletUpdated(msg);
+        NotificationPageDto second = notificationService.getInbox(userId, first.getNextCursor(), 2);
 
-        // Assert: repo never called
-        verify(notificationRepository, never()).save(any());
-        verify(notificationRepository, never()).saveAll(anyList());
+        Assert.assertEquals(1, second.getItems().size());
+        Assert.assertNull(second.getNextCursor());
+        verify(notificationRepository).findInboxAfter(userId, 8, PageRequest.of(0, 3));
     }
 
-
     @Test
     public void testGetNotificationsByUser()  {
         Integer userId = 1;
@@ -184,6 +208,20 @@ public class NotificationServiceTest {
         verify(notificationRepository, times(1)).findByUserIdOrderByCreatedAtDesc(userId);
     }
 
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetInbox_InvalidCursor() {
+        notificationService.getInbox(1, "not-a-cursor", 20);
+    }
+
+    @Test
+    public void testCountUnread() {
+        when(notificationRepository.countByUserIdAndStatus(1, NotificationStatus.UNREAD)).thenReturn(3L);
+        when(unreadCountCacheService.getUnreadCount(eq(1), any())).thenAnswer(invocation ->
+                invocation.<java.util.function.LongSupplier>getArgument(1).getAsLong());
+
+        Assert.assertEquals(3L, notificationService.countUnread(1));
+    }
+
     @Test
     public void testMarkAsRead() throws AccessDeniedException {
         Notification notification = Notification.builder()
@@ -228,40 +266,44 @@ public class NotificationServiceTest {
     }
 
     @Test
-    public void testMarkAllAsRead_WithNotifications() {
-        Integer userId = 10;
-
-        Notification n1 = Notification.builder()
-                .id(1).userId(userId).status(NotificationStatus.UNREAD).message("Msg1").build();
-        Notification n2 = Notification.builder()
-                .id(2).userId(userId).status(NotificationStatus.UNREAD).message("Msg2").build();
+    public void testMarkAsRead_AlreadyRead() throws AccessDeniedException {
+        Notification notification = Notification.builder()
+                .id(1).userId(10).status(NotificationStatus.READ).message("Test message").build();
+        when(notificationRepository.findById(1)).thenReturn(Optional.of(notification));
 
-        List<Notification> notifications = Arrays.asList(n1, n2);
+        notificationService.markAsRead(1, 10);
 
-        when(notificationRepository.findByUserId(userId)).thenReturn(notifications);
+        verify(notificationRepository, never()).save(any(Notification.class));
+        verifyNoInteractions(unreadCountCacheService);
+    }
 
-        int updatedCount = notificationService.markAllAsRead(userId);
+    @Test
+    public void testMarkAllAsRead_WithNotifications() {
+        Integer userId = 10;
+        ReflectionTestUtils.setField(notificationService, "markReadChunkSize", 2);
 
-        // Assert
+        // 5 unread notifications: two full chunks, then the remainder
+        when(notificationRepository.updateNotifications(userId, 2)).thenReturn(2, 2, 1);
 
-        Assert.assertEquals(2, updatedCount);
-        Assert.assertEquals(NotificationStatus.READ, n1.getStatus());
-        Assert.assertEquals(NotificationStatus.READ, n2.getStatus());
+        int updatedCount = notificationService.markAllAsRead(userId);
 
-        verify(notificationRepository, times(1)).saveAll(notifications);
+        Assert.assertEquals(5, updatedCount);
+        verify(notificationRepository, times(3)).updateNotifications(userId, 2);
+        verify(notificationRepository, never()).saveAll(any());
+        verify(unreadCountCacheService).invalidate(userId);
     }
 
     @Test
     public void testMarkAllAsRead_NoNotifications() {
         Integer userId = 20;
+        ReflectionTestUtils.setField(notificationService, "markReadChunkSize", 2);
 
-        when(notificationRepository.findByUserId(userId)).thenReturn(Collections.emptyList());
+        when(notificationRepository.updateNotifications(userId, 2)).thenReturn(0);
 
         int updatedCount = notificationService.markAllAsRead(userId);
 
-        // Assert
         Assert.assertEquals(0, updatedCount);
-        verify(notificationRepository, times(1)).saveAll(Collections.emptyList());
+        verify(notificationRepository, times(1)).updateNotifications(userId, 2);
     }
 
 }
@@ -0,0 +1,166 @@
+package com.example.majorproject.Services;
+
+import com.example.majorproject.Dtos.NotificationDto;
+import com.example.majorproject.Models.Notification;
+import com.example.majorproject.Models.NotificationStatus;
+import com.example.majorproject.Models.NotificationType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.Silent.class)
+public class NotificationStreamServiceTest {
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    @Mock
+    private RedisMessageListenerContainer listenerContainer;
+
+    private NotificationStreamService streamService;
+
+    private MessageListener streamListener;
+
+    // Records what would be written to the client
+    private static class RecordingEmitter extends SseEmitter {
+        final List<Object> sent = new CopyOnWriteArrayList<>();
+        final CountDownLatch unblocked = new CountDownLatch(1);
+        volatile boolean slow;
+        volatile boolean completed;
+
+        @Override
+        public void send(SseEventBuilder builder) {
+            if (slow) {
+                await(unblocked);
+            }
+            builder.build().forEach(part -> sent.add(part.getData()));
+        }
+
+        @Override
+        public void complete() {
+            completed = true;
+        }
+
+        long notifications() {
+            return sent.stream().filter(NotificationDto.class::isInstance).count();
+        }
+
+        NotificationDto notification() {
+            return (NotificationDto) sent.stream().filter(NotificationDto.class::isInstance).findFirst().orElse(null);
+        }
+    }
+
+    @Before
+    public void setUp() {
+        streamService = new NotificationStreamService(redisTemplate, listenerContainer, new ObjectMapper(),
+                new SimpleMeterRegistry(), Duration.ofMinutes(30), Duration.ofHours(1), 3);
+
+        ArgumentCaptor<MessageListener> listener = ArgumentCaptor.forClass(MessageListener.class);
+        verify(listenerContainer).addMessageListener(listener.capture(), eq(new ChannelTopic("notifications:stream")));
+        streamListener = listener.getValue();
+    }
+
+    @After
+    public void tearDown() {
+        streamService.stop();
+    }
+
+    @Test
+    public void publishedNotification_reachesOnlyItsUsersStreams() {
+        RecordingEmitter alice = new RecordingEmitter();
+        RecordingEmitter bob = new RecordingEmitter();
+        streamService.register(1, alice);
+        streamService.register(2, bob);
+
+        Notification notification = Notification.builder().id(7).userId(1).message("You received $5")
+                .type(NotificationType.TRANSACTION).status(NotificationStatus.UNREAD).build();
+        streamService.publish(List.of(notification));
+
+        ArgumentCaptor<String> payload = ArgumentCaptor.forClass(String.class);
+        verify(redisTemplate, times(1)).convertAndSend(eq("notifications:stream"), payload.capture());
+
+        // Loop the published message back in, as Redis would on every instance
+        streamListener.onMessage(new DefaultMessage("notifications:stream".getBytes(StandardCharsets.UTF_8),
+                payload.getValue().getBytes(StandardCharsets.UTF_8)), null);
+
+        // Sent off the listener thread
+        waitFor(() -> alice.notification() != null);
+        Assert.assertNotNull(alice.notification());
+        Assert.assertEquals(Integer.valueOf(7), alice.notification().getId());
+        Assert.assertEquals("You received $5", alice.notification().getMessage());
+        Assert.assertTrue(bob.sent.isEmpty());
+    }
+
+    @Test
+    public void slowClient_doesNotBlockOthersAndIsClosedWhenItFallsBehind() throws Exception {
+        RecordingEmitter slow = new RecordingEmitter();
+        slow.slow = true;
+        RecordingEmitter fast = new RecordingEmitter();
+        streamService.register(1, slow);
+        streamService.register(2, fast);
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        for (int id = 1; id <= 5; id++) {
+            List<Notification> poll = id <= 3
+                    ? List.of(Notification.builder().id(id).userId(1).message("slow " + id).build(),
+                            Notification.builder().id(id).userId(2).message("fast " + id).build())
+                    : List.of(Notification.builder().id(id).userId(1).message("slow " + id).build());
+            // Returns at once even though user 1's client is stuck
+            streamListener.onMessage(new DefaultMessage("notifications:stream".getBytes(StandardCharsets.UTF_8),
+                    objectMapper.writeValueAsBytes(poll)), null);
+        }
+
+        waitFor(() -> fast.notifications() == 3);
+        Assert.assertEquals(3, fast.notifications());
+        // At most one event in flight plus a buffer of 3: the fifth overflowed and the stream was closed
+        Assert.assertTrue(slow.completed);
+        Assert.assertFalse(fast.completed);
+        slow.unblocked.countDown();
+    }
+
+    private static void waitFor(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    public void publish_nothingStored() {
+        streamService.publish(List.of());
+
+        verifyNoInteractions(redisTemplate);
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.majorproject.Services;
+
+import com.example.majorproject.Models.Notification;
+import com.example.majorproject.Models.NotificationStatus;
+import com.example.majorproject.Models.NotificationType;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.Silent.class)
+public class NotificationWriterTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private UnreadCountCacheService unreadCountCacheService;
+
+    @Mock
+    private NotificationStreamService notificationStreamService;
+
+    private NotificationWriter notificationWriter;
+
+    @Before
+    public void setUp() {
+        notificationWriter = new NotificationWriter(jdbcTemplate, transactionManager, unreadCountCacheService,
+                notificationStreamService, 2);
+    }
+
+    private Notification unread(Integer userId) {
+        return Notification.builder().userId(userId).message("hi").type(NotificationType.TRANSACTION)
+                .status(NotificationStatus.UNREAD).build();
+    }
+
+    @Test
+    public void write_insertsInBatchesOfOneTransactionAndCountsPerUser() {
+        List<Notification> notifications = List.of(unread(1), unread(2), unread(1));
+
+        notificationWriter.write(notifications);
+
+        // batch-size 2: two JDBC batches, one commit
+        verify(jdbcTemplate, times(2)).batchUpdate(any(PreparedStatementCreator.class),
+                any(BatchPreparedStatementSetter.class), any(KeyHolder.class));
+        verify(transactionManager, times(1)).commit(any());
+        verify(unreadCountCacheService).adjust(1, 2L);
+        verify(unreadCountCacheService).adjust(2, 1L);
+        verify(notificationStreamService).publish(notifications);
+    }
+
+    @Test
+    public void write_nothingToStore() {
+        notificationWriter.write(List.of());
+
+        verifyNoInteractions(jdbcTemplate, unreadCountCacheService, notificationStreamService);
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.majorproject.Services;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.Duration;
+
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class UnreadCountCacheServiceTest {
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    private UnreadCountCacheService unreadCountCacheService;
+
+    @Before
+    public void setUp() {
+        unreadCountCacheService = new UnreadCountCacheService(redisTemplate, Duration.ofMinutes(10));
+    }
+
+    @Test
+    public void invalidate_redisDown_doesNotFailTheCaller() {
+        when(redisTemplate.delete("NOTIFICATION_UNREAD:1")).thenThrow(new RedisConnectionFailureException("Redis down"));
+
+        unreadCountCacheService.invalidate(1);
+
+        verify(redisTemplate).delete("NOTIFICATION_UNREAD:1");
+    }
+}
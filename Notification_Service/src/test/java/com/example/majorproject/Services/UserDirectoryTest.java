@@ -0,0 +1,132 @@
+package com.example.majorproject.Services;
+
+import com.example.majorproject.Events.UserCreatedEvent;
+import com.example.majorproject.Events.UserUpdatedEvent;
+import com.example.majorproject.Models.DirectoryUser;
+import com.example.majorproject.Repositories.DirectoryUserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.listener.Topic;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class UserDirectoryTest {
+
+    @Mock
+    private DirectoryUserRepository directoryUserRepository;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private UserProfileCacheService userProfileCacheService;
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    @Mock
+    private RedisMessageListenerContainer listenerContainer;
+
+    private UserDirectory userDirectory;
+
+    private MessageListener renamedListener;
+
+    @Before
+    public void setUp() {
+        userDirectory = new UserDirectory(directoryUserRepository, jdbcTemplate, userProfileCacheService,
+                redisTemplate, listenerContainer, new SimpleMeterRegistry(), 1000, Duration.ofMinutes(10));
+        ArgumentCaptor<MessageListener> listener = ArgumentCaptor.forClass(MessageListener.class);
+        verify(listenerContainer).addMessageListener(listener.capture(), any(Topic.class));
+        renamedListener = listener.getValue();
+    }
+
+    @Test
+    public void names_addedUsersAreServedInProcess() {
+        userDirectory.add(List.of(new UserCreatedEvent(1, "Alice"), new UserCreatedEvent(2, "Bob")));
+
+        Assert.assertEquals(Map.of(1, "Alice", 2, "Bob"), userDirectory.names(List.of(1, 2)));
+        verify(jdbcTemplate, times(1)).batchUpdate(startsWith("insert ignore"), anyList());
+        verifyNoInteractions(directoryUserRepository, userProfileCacheService);
+    }
+
+    @Test
+    public void names_missesAreOneBulkRead() {
+        when(directoryUserRepository.findAllById(Set.of(1, 2)))
+                .thenReturn(List.of(new DirectoryUser(1, "Alice"), new DirectoryUser(2, "Bob")));
+
+        Assert.assertEquals(Map.of(1, "Alice", 2, "Bob"), userDirectory.names(List.of(1, 2)));
+        Assert.assertEquals(Map.of(1, "Alice", 2, "Bob"), userDirectory.names(List.of(1, 2)));
+
+        verify(directoryUserRepository, times(1)).findAllById(any());
+    }
+
+    @Test
+    public void names_userOnlyInRedisIsBackfilled() {
+        when(directoryUserRepository.findAllById(Set.of(7))).thenReturn(List.of());
+        when(userProfileCacheService.getProfile(7)).thenReturn(Map.of("name", "Carol"));
+
+        Assert.assertEquals(Map.of(7, "Carol"), userDirectory.names(List.of(7)));
+        Assert.assertEquals(Map.of(7, "Carol"), userDirectory.names(List.of(7)));
+
+        verify(jdbcTemplate, times(1)).batchUpdate(startsWith("insert ignore"), anyList());
+        verify(userProfileCacheService, times(1)).getProfile(7);
+    }
+
+    @Test
+    public void names_redisDown_leavesUserOut() {
+        when(directoryUserRepository.findAllById(Set.of(7))).thenReturn(List.of());
+        when(userProfileCacheService.getProfile(7)).thenThrow(new IllegalStateException("Redis down"));
+
+        Assert.assertEquals(Map.of(), userDirectory.names(List.of(7)));
+    }
+
+    @Test
+    public void usersUpdated_renameReplacesName() {
+        userDirectory.add(List.of(new UserCreatedEvent(1, "Alice")));
+
+        userDirectory.usersUpdated(List.of(new UserUpdatedEvent(1, "Alicia")));
+        // A late user-created for the same user keeps the newer name
+        userDirectory.add(List.of(new UserCreatedEvent(1, "Alice")));
+
+        Assert.assertEquals(Map.of(1, "Alicia"), userDirectory.names(List.of(1)));
+        verify(jdbcTemplate, times(1)).batchUpdate(startsWith("insert into user_directory"), anyList());
+    }
+
+    @Test
+    public void usersUpdated_announcesRenamedIds() {
+        userDirectory.usersUpdated(List.of(new UserUpdatedEvent(1, "Alicia"), new UserUpdatedEvent(1, "Ali")));
+
+        verify(redisTemplate, times(1)).convertAndSend(UserDirectory.RENAMED_CHANNEL, "1");
+        Assert.assertEquals(Map.of(1, "Ali"), userDirectory.names(List.of(1)));
+    }
+
+    @Test
+    public void renamedElsewhere_cachedNameIsReadAgain() {
+        userDirectory.add(List.of(new UserCreatedEvent(1, "Alice")));
+        when(directoryUserRepository.findAllById(Set.of(1))).thenReturn(List.of(new DirectoryUser(1, "Alicia")));
+
+        renamedListener.onMessage(new DefaultMessage(UserDirectory.RENAMED_CHANNEL.getBytes(StandardCharsets.UTF_8),
+                "1,x".getBytes(StandardCharsets.UTF_8)), null);
+
+        Assert.assertEquals(Map.of(1, "Alicia"), userDirectory.names(List.of(1)));
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.majorproject.Configs;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.kafka.support.ProducerListener;
+
+/**
+ * Logs every record the producer gave up on (after its own retries for {@code delivery-timeout-ms}) and counts
+ * it in {@code kafka.producer.send.failures}, tagged by topic, so a failed send is never silent.
+ */
+public class SendFailureListener<K, V> implements ProducerListener<K, V> {
+
+    private static final Logger logger = LoggerFactory.getLogger(SendFailureListener.class);
+
+    private final MeterRegistry meterRegistry;
+
+    public SendFailureListener(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public void onError(ProducerRecord<K, V> record, RecordMetadata recordMetadata, Exception exception) {
+        Counter.builder("kafka.producer.send.failures")
+                .description("Records that could not be delivered to Kafka")
+                .tag("topic", record.topic())
+                .register(meterRegistry)
+                .increment();
+        logger.error("Failed to send record with key={} to {}", record.key(), record.topic(), exception);
+    }
+}
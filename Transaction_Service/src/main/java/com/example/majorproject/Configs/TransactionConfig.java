@@ -1,39 +1,181 @@
 package com.example.majorproject.Configs;
 
+import com.example.majorproject.Events.EventDeserializer;
+import com.example.majorproject.Events.EventSchemaRegistry;
+import com.example.majorproject.Events.EventSerializer;
+import com.example.majorproject.Events.WalletUpdatedEvent;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.errors.TopicExistsException;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
 import org.apache.kafka.common.serialization.StringSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.config.TopicBuilder;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
 import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaAdmin;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.MicrometerProducerListener;
 import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 @Configuration
 public class TransactionConfig {
 
+    private static final Logger logger = LoggerFactory.getLogger(TransactionConfig.class);
+
     @Value("${spring.kafka.bootstrap-servers}")
     private String bootstrapServers;
 
-    public ProducerFactory<String, String> producerFactory() {
-        Map<String, Object> props = new HashMap<>();
-        props.put("bootstrap.servers", bootstrapServers);
+    @Value("${kafka.binary-topics:}")
+    private String binaryTopics;
+
+    @Value("${kafka.schema-registry:}")
+    private String schemaRegistry;
+
+    @Value("${transaction.kafka.concurrency:1}")
+    private int concurrency;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    @Autowired
+    private ProducerTuning producerTuning;
+
+    // ✅ Tuned producer (batching, compression, idempotence) that also exports the Kafka client metrics
+    @Bean
+    ProducerFactory<String, Object> producerFactory(MeterRegistry meterRegistry) {
+        Map<String, Object> props = producerTuning.apply(new HashMap<>());
+        props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
-        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
-        return new DefaultKafkaProducerFactory<>(props);
+        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, EventSerializer.class);
+        props.put(EventSerializer.BINARY_TOPICS_CONFIG, binaryTopics);
+        props.put(EventSchemaRegistry.LOCATION_CONFIG, schemaRegistry);
+        DefaultKafkaProducerFactory<String, Object> factory = new DefaultKafkaProducerFactory<>(props);
+        factory.addListener(new MicrometerProducerListener<>(meterRegistry));
+        return factory;
     }
 
+    // Records that cannot be decoded go to the error handler and are skipped
     @Bean
-    KafkaTemplate<String, String> kafkaTemplate() {
-        return new KafkaTemplate<>(producerFactory());
+    ConsumerFactory<String, WalletUpdatedEvent> consumerFactory() {
+        Map<String, Object> props = new HashMap<>();
+        props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(EventSchemaRegistry.LOCATION_CONFIG, schemaRegistry);
+        return new DefaultKafkaConsumerFactory<>(props, StringDeserializer::new,
+                () -> new ErrorHandlingDeserializer<>(new EventDeserializer<>(WalletUpdatedEvent.class)));
+    }
+
+    @Bean
+    ConcurrentKafkaListenerContainerFactory<String, WalletUpdatedEvent> kafkaListenerContainerFactory(MeterRegistry meterRegistry) {
+        ConcurrentKafkaListenerContainerFactory<String, WalletUpdatedEvent> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactory());
+        factory.setConcurrency(concurrency);
+        // Continues the trace from the record headers and times each listener call
+        factory.setRecordInterceptor(new QueueWaitInterceptor<>(meterRegistry));
+        factory.getContainerProperties().setObservationEnabled(true);
+        applyThreading(factory);
+        return factory;
+    }
+
+    @Value("${kafka.topic.transaction-created}")
+    private String transactionCreatedTopic;
+
+    @Value("${kafka.partitions.transaction-created:1}")
+    private int transactionCreatedPartitions;
+
+    // Partition count bounds how many Wallet_Service consumer threads can work in parallel.
+    // Create-only: runs before the listener containers start, like KafkaAdmin's own NewTopic handling,
+    // but never adds partitions to an existing topic (see kafka.partitions.transaction-created)
+    @Bean
+    SmartInitializingSingleton transactionCreatedTopic(KafkaAdmin kafkaAdmin) {
+        return () -> createIfMissing(kafkaAdmin,
+                TopicBuilder.name(transactionCreatedTopic).partitions(transactionCreatedPartitions).build());
+    }
+
+    // Creates the topic with the configured partitions when it does not exist yet and leaves an existing topic
+    // alone: adding partitions moves keys to other partitions and breaks per-key ordering
+    private static void createIfMissing(KafkaAdmin kafkaAdmin, NewTopic topic) {
+        try (AdminClient admin = AdminClient.create(kafkaAdmin.getConfigurationProperties())) {
+            admin.createTopics(List.of(topic)).all().get(kafkaAdmin.getOperationTimeout(), TimeUnit.SECONDS);
+            logger.info("Created topic {} with {} partitions", topic.name(), topic.numPartitions());
+        } catch (ExecutionException e) {
+            if (!(e.getCause() instanceof TopicExistsException)) {
+                logger.warn("Could not create topic {}", topic.name(), e.getCause());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (TimeoutException e) {
+            logger.warn("Timed out creating topic {}", topic.name());
+        }
+    }
+
+    @Bean
+    KafkaTemplate<String, Object> kafkaTemplate(ProducerFactory<String, Object> producerFactory, MeterRegistry meterRegistry) {
+        KafkaTemplate<String, Object> template = new KafkaTemplate<>(producerFactory);
+        // Propagates the current trace to consumers in the record headers
+        template.setObservationEnabled(true);
+        template.setProducerListener(new SendFailureListener<>(meterRegistry));
+        return template;
+    }
+
+    // ✅ Encodes outbox payloads with the same per-topic format the producers use
+    @Bean
+    EventSerializer eventSerializer() {
+        EventSerializer serializer = new EventSerializer();
+        serializer.configure(Map.of(
+                EventSerializer.BINARY_TOPICS_CONFIG, binaryTopics,
+                EventSchemaRegistry.LOCATION_CONFIG, schemaRegistry), false);
+        return serializer;
+    }
+
+    // ✅ Relay producer: ships pre-encoded outbox payloads with the same tuning as the event producer.
+    // No observation here: each record carries the trace of the request that enqueued it
+    @Bean
+    KafkaTemplate<String, byte[]> outboxKafkaTemplate(MeterRegistry meterRegistry) {
+        Map<String, Object> props = producerTuning.apply(new HashMap<>());
+        props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
+        DefaultKafkaProducerFactory<String, byte[]> factory = new DefaultKafkaProducerFactory<>(props);
+        factory.addListener(new MicrometerProducerListener<>(meterRegistry));
+        KafkaTemplate<String, byte[]> template = new KafkaTemplate<>(factory);
+        template.setProducerListener(new SendFailureListener<>(meterRegistry));
+        return template;
     }
 
     @Bean
     ObjectMapper objectMapper() {
         return new ObjectMapper();
     }
+
+    // ✅ In virtual-thread mode the listener containers poll and run listeners on virtual threads as well
+    private void applyThreading(ConcurrentKafkaListenerContainerFactory<String, ?> factory) {
+        if (virtualThreads) {
+            SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("kafka-listener-");
+            executor.setVirtualThreads(true);
+            factory.getContainerProperties().setListenerTaskExecutor(executor);
+        }
+    }
 }
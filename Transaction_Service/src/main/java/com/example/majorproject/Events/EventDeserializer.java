@@ -0,0 +1,45 @@
+package com.example.majorproject.Events;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Reads one event type straight from the record bytes, in JSON or the binary format (detected per record).
+ * Wrap it in an {@code ErrorHandlingDeserializer} so a malformed record is skipped instead of blocking the partition.
+ */
+public class EventDeserializer<T> implements Deserializer<T> {
+
+    private final Class<T> type;
+    private final ObjectReader reader;
+    private BinaryEventCodec binaryCodec;
+
+    public EventDeserializer(Class<T> type) {
+        this.type = type;
+        this.reader = EventCodec.MAPPER.readerFor(type);
+        this.binaryCodec = new BinaryEventCodec(EventSchemaRegistry.defaultRegistry());
+    }
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        binaryCodec = new BinaryEventCodec(EventSchemaRegistry.fromConfigs(configs));
+    }
+
+    @Override
+    public T deserialize(String topic, byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        if (BinaryEventCodec.isBinary(data)) {
+            return binaryCodec.decode(data, type);
+        }
+        try {
+            return reader.readValue(data);
+        } catch (IOException e) {
+            throw new SerializationException("Failed to deserialize " + type.getSimpleName() + " from topic " + topic, e);
+        }
+    }
+}
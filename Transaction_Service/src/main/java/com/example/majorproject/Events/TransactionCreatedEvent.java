@@ -0,0 +1,4 @@
+package com.example.majorproject.Events;
+
+public record TransactionCreatedEvent(Integer sender, Integer receiver, Long amount, String externalTransactionId) {
+}
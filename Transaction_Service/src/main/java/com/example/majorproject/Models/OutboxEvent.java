@@ -0,0 +1,37 @@
+package com.example.majorproject.Models;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.Instant;
+
+/**
+ * An event waiting to be published, written in the same DB transaction as the change it describes.
+ * {@code payload} is already encoded for {@code topic}, so the relay only ships bytes.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class OutboxEvent {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private String topic;
+
+    private String eventKey;
+
+    @Lob
+    @Column(nullable = false, length = 65535)
+    private byte[] payload;
+
+    @Column(nullable = false)
+    private Instant createdAt;
+
+    // W3C traceparent of the request that enqueued the event, sent on as a record header
+    private String traceParent;
+}
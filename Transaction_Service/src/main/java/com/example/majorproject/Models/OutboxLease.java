@@ -0,0 +1,27 @@
+package com.example.majorproject.Models;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.Instant;
+
+/**
+ * Names the one Transaction_Service instance allowed to relay the outbox until {@code expiresAt}.
+ * A single relay keeps events of the same sender in the order they were enqueued.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class OutboxLease {
+    @Id
+    private String name;
+
+    @Column(nullable = false)
+    private String owner;
+
+    @Column(nullable = false)
+    private Instant expiresAt;
+}
@@ -0,0 +1,35 @@
+package com.example.majorproject.Repositories;
+
+import com.example.majorproject.Models.OutboxLease;
+import jakarta.transaction.Transactional;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+
+@Repository
+public interface OutboxLeaseRepository extends JpaRepository<OutboxLease, String> {
+
+    // Renews the lease for its owner, or takes it over once it has expired; 1 = the caller holds it now
+    @Modifying
+    @Transactional
+    @Query("update OutboxLease l set l.owner = :owner, l.expiresAt = :expiresAt " +
+            "where l.name = :name and (l.owner = :owner or l.expiresAt < :now)")
+    int claim(@Param("name") String name, @Param("owner") String owner,
+              @Param("expiresAt") Instant expiresAt, @Param("now") Instant now);
+
+    // First claim ever: 1 = the row was created for the caller, 0 = another instance created it first
+    @Modifying
+    @Transactional
+    @Query(value = "insert ignore into outbox_lease (name, owner, expires_at) values (:name, :owner, :expiresAt)",
+            nativeQuery = true)
+    int create(@Param("name") String name, @Param("owner") String owner, @Param("expiresAt") Instant expiresAt);
+
+    @Modifying
+    @Transactional
+    @Query("update OutboxLease l set l.expiresAt = :now where l.name = :name and l.owner = :owner")
+    int release(@Param("name") String name, @Param("owner") String owner, @Param("now") Instant now);
+}
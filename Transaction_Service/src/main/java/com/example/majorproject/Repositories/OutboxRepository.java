@@ -0,0 +1,17 @@
+package com.example.majorproject.Repositories;
+
+import com.example.majorproject.Models.OutboxEvent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface OutboxRepository extends JpaRepository<OutboxEvent, Long> {
+
+    // Oldest first. No row locks: only the instance holding the outbox lease reads and deletes batches
+    @Query(value = "select * from outbox_event order by id limit :limit", nativeQuery = true)
+    List<OutboxEvent> findBatch(@Param("limit") int limit);
+}
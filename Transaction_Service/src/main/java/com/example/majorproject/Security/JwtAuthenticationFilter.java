@@ -1,5 +1,6 @@
 package com.example.majorproject.Security;
 
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -33,11 +34,12 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         }
 
         String jwt = authHeader.substring(7);
-        String userEmail = jwtService.extractUsername(jwt);
-        Integer userId=jwtService.extractUserId(jwt);
+        // One verification per request; repeat requests with the same token hit the cache
+        Claims claims = jwtService.verify(jwt);
+        String userEmail = claims.getSubject();
+        Integer userId = claims.get("userId", Integer.class);
 
-        if (userEmail != null && jwtService.validateToken(jwt) &&
-                SecurityContextHolder.getContext().getAuthentication() == null) {
+        if (userEmail != null && SecurityContextHolder.getContext().getAuthentication() == null) {
 
             // put both email and userId into principal
             Map<String, Object> principal = new HashMap<>();
@@ -0,0 +1,220 @@
+package com.example.majorproject.Services;
+
+import com.example.majorproject.Events.EventSerializer;
+import com.example.majorproject.Models.OutboxEvent;
+import com.example.majorproject.Models.OutboxLease;
+import com.example.majorproject.Repositories.OutboxLeaseRepository;
+import com.example.majorproject.Repositories.OutboxRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.tracing.Span;
+import io.micrometer.tracing.Tracer;
+import io.micrometer.tracing.propagation.Propagator;
+import jakarta.annotation.PreDestroy;
+import jakarta.transaction.Transactional;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Transactional outbox: {@link #enqueue} stores an encoded event next to the business row, and
+ * {@link #relay} publishes stored events in batches. A batch is deleted only after every send in it
+ * was acknowledged, so events survive crashes and broker outages (at-least-once delivery).
+ * <p>
+ * Only the instance holding the {@link OutboxLease} relays, one batch at a time and oldest first, so events
+ * of the same sender keep their order across instances. No DB transaction or row lock is held while waiting
+ * for Kafka: the batch is read, sent, and deleted on acknowledgement, each step on its own. The lease is renewed
+ * before every batch and must outlive a batch ({@code lease-ms} &gt; {@code send-timeout-ms}); if the holder dies,
+ * another instance takes over once it expires and resends from the oldest unacknowledged event.
+ */
+@Service
+public class OutboxService {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutboxService.class);
+
+    private static final String TRACEPARENT_HEADER = "traceparent";
+
+    @Value("${transaction.outbox.batch-size:500}")
+    private int batchSize;
+
+    @Value("${transaction.outbox.send-timeout-ms:10000}")
+    private long sendTimeoutMs;
+
+    @Value("${transaction.outbox.lease-ms:30000}")
+    private long leaseMs;
+
+    private static final String LEASE = "outbox-relay";
+
+    private final String instanceId = UUID.randomUUID().toString();
+    // Written by the relay scheduler, read on shutdown
+    private volatile boolean leaseHeld;
+
+    private final OutboxRepository outboxRepository;
+    private final OutboxLeaseRepository outboxLeaseRepository;
+    private final EventSerializer eventSerializer;
+    private final KafkaTemplate<String, byte[]> outboxKafkaTemplate;
+    private final Tracer tracer;
+    private final Propagator propagator;
+
+    private final AtomicLong lagMillis = new AtomicLong();
+    private final Counter published;
+    private final Counter failures;
+    private final Timer batchTimer;
+
+    public OutboxService(OutboxRepository outboxRepository,
+                         OutboxLeaseRepository outboxLeaseRepository,
+                         EventSerializer eventSerializer,
+                         @Qualifier("outboxKafkaTemplate") KafkaTemplate<String, byte[]> outboxKafkaTemplate,
+                         MeterRegistry meterRegistry,
+                         Tracer tracer,
+                         Propagator propagator) {
+        this.outboxRepository = outboxRepository;
+        this.outboxLeaseRepository = outboxLeaseRepository;
+        this.eventSerializer = eventSerializer;
+        this.outboxKafkaTemplate = outboxKafkaTemplate;
+        this.tracer = tracer;
+        this.propagator = propagator;
+
+        this.published = Counter.builder("outbox.relay.published")
+                .description("Events published from the outbox")
+                .register(meterRegistry);
+        this.failures = Counter.builder("outbox.relay.failures")
+                .description("Outbox batches that failed and will be retried")
+                .register(meterRegistry);
+        this.batchTimer = Timer.builder("outbox.relay.batch")
+                .description("Time to publish and clear one outbox batch")
+                .register(meterRegistry);
+        TimeGauge.builder("outbox.relay.lag", lagMillis, TimeUnit.MILLISECONDS, AtomicLong::get)
+                .description("Age of the oldest event in the last batch relayed")
+                .register(meterRegistry);
+    }
+
+    // Must join the caller's transaction, otherwise the event could outlive a rolled-back change
+    @Transactional(Transactional.TxType.MANDATORY)
+    public void enqueue(String topic, String key, Object event) {
+        outboxRepository.save(OutboxEvent.builder()
+                .topic(topic)
+                .eventKey(key)
+                .payload(eventSerializer.serialize(topic, event))
+                .createdAt(Instant.now())
+                .traceParent(currentTraceParent())
+                .build());
+    }
+
+    private String currentTraceParent() {
+        Span span = tracer.currentSpan();
+        if (span == null) {
+            return null;
+        }
+        Map<String, String> carrier = new HashMap<>();
+        propagator.inject(span.context(), carrier, Map::put);
+        return carrier.get(TRACEPARENT_HEADER);
+    }
+
+    @Scheduled(fixedDelayString = "${transaction.outbox.poll-interval-ms:50}")
+    public void relay() {
+        int relayed;
+        do {
+            try {
+                relayed = batchTimer.recordCallable(this::relayBatch);
+            } catch (Exception e) {
+                failures.increment();
+                logger.error("Outbox relay failed, batch will be retried", e);
+                return;
+            }
+        } while (relayed == batchSize);
+    }
+
+    private int relayBatch() {
+        if (!acquireLease()) {
+            // Another instance is relaying
+            return 0;
+        }
+        List<OutboxEvent> batch = outboxRepository.findBatch(batchSize);
+        if (batch.isEmpty()) {
+            lagMillis.set(0);
+            return 0;
+        }
+        lagMillis.set(Duration.between(batch.get(0).getCreatedAt(), Instant.now()).toMillis());
+
+        // ✅ Hand the whole batch to the producer before waiting, so sends are pipelined
+        List<CompletableFuture<?>> sends = new ArrayList<>(batch.size());
+        List<Long> ids = new ArrayList<>(batch.size());
+        for (OutboxEvent event : batch) {
+            sends.add(outboxKafkaTemplate.send(toRecord(event)));
+            ids.add(event.getId());
+        }
+        outboxKafkaTemplate.flush();
+        awaitAll(sends);
+
+        outboxRepository.deleteAllByIdInBatch(ids);
+        published.increment(batch.size());
+        return batch.size();
+    }
+
+    private boolean acquireLease() {
+        Instant now = Instant.now();
+        Instant expiresAt = now.plusMillis(leaseMs);
+        boolean held = outboxLeaseRepository.claim(LEASE, instanceId, expiresAt, now) == 1
+                || outboxLeaseRepository.create(LEASE, instanceId, expiresAt) == 1;
+        if (held != leaseHeld) {
+            logger.info(held ? "Outbox relay lease acquired by {}" : "Outbox relay lease lost by {}", instanceId);
+            leaseHeld = held;
+        }
+        return held;
+    }
+
+    // Lets another instance take over right away instead of waiting for the lease to expire
+    @PreDestroy
+    public void releaseLease() {
+        if (leaseHeld) {
+            try {
+                outboxLeaseRepository.release(LEASE, instanceId, Instant.now());
+                leaseHeld = false;
+            } catch (RuntimeException e) {
+                logger.warn("Could not release the outbox relay lease", e);
+            }
+        }
+    }
+
+    // The consumer continues the enqueuing request's trace, so the outbox wait shows up inside it
+    private ProducerRecord<String, byte[]> toRecord(OutboxEvent event) {
+        ProducerRecord<String, byte[]> record = new ProducerRecord<>(event.getTopic(), event.getEventKey(), event.getPayload());
+        if (event.getTraceParent() != null) {
+            record.headers().add(TRACEPARENT_HEADER, event.getTraceParent().getBytes(StandardCharsets.UTF_8));
+        }
+        return record;
+    }
+
+    private void awaitAll(List<CompletableFuture<?>> sends) {
+        try {
+            CompletableFuture.allOf(sends.toArray(CompletableFuture[]::new)).get(sendTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while publishing outbox batch", e);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new IllegalStateException("Outbox batch was not acknowledged by Kafka", e);
+        }
+    }
+}
@@ -1,15 +1,15 @@
 package com.example.majorproject.Services;
 
 import com.example.majorproject.Dtos.CreateTransactionDTO;
+import com.example.majorproject.Events.TransactionCreatedEvent;
+import com.example.majorproject.Events.WalletUpdatedEvent;
 import com.example.majorproject.Exception.UserNotFoundException;
 import com.example.majorproject.Models.Transaction;
 import com.example.majorproject.Models.TransactionStatus;
 import com.example.majorproject.Repositories.TransactionRepository;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
-import org.json.simple.parser.ParseException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.transaction.Transactional;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -18,6 +18,8 @@ import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+
 @Service
 public class TransactionService {
 
@@ -33,12 +35,16 @@ public class TransactionService {
     private TransactionRepository transactionRepository;
 
     @Autowired
-    KafkaTemplate<String, String> kafkaTemplate;
+    KafkaTemplate<String, Object> kafkaTemplate;
+
+    @Autowired
+    OutboxService outboxService;
 
     @Autowired
-    ObjectMapper objectMapper;
+    MeterRegistry meterRegistry;
 
-    private final JSONParser jsonParser=new JSONParser();
+    // ✅ One DB transaction: the transaction row and its outbox event commit (or roll back) together
+    @Transactional
     public Transaction send(CreateTransactionDTO createTransactionDTO)  {
         Transaction transaction = createTransactionDTO.convertToTransaction();
 
@@ -47,32 +53,24 @@ public class TransactionService {
         }
 
         transaction.setStatus(TransactionStatus.PENDING);
+        // Keyed by sender so all transfers out of one wallet land on the same partition, in order
+        String partitionKey = transaction.getSender().toString();
         transaction=transactionRepository.save(transaction);
-        try{
-            String data=objectMapper.writeValueAsString(transaction);
-            logger.info("Publishing transaction-created event for txnId={}", transaction.getExternalTransactionId());
-            kafkaTemplate.send(TRANSACTION_CREATED_TOPIC,data);
-        }
-        catch(JsonProcessingException e){
-            logger.error("Failed to publish transaction-created event for txnId={}", transaction.getExternalTransactionId(), e);
-        }
+        // Only the fields Wallet_Service needs go on the wire, not the whole entity
+        TransactionCreatedEvent event = new TransactionCreatedEvent(transaction.getSender(), transaction.getReceiver(),
+                transaction.getAmount(), transaction.getExternalTransactionId());
+        outboxService.enqueue(TRANSACTION_CREATED_TOPIC, partitionKey, event);
+        logger.info("Queued transaction-created event for txnId={}", transaction.getExternalTransactionId());
 
         return transaction;
     }
 
     @KafkaListener(topics = "${kafka.topic.wallet-updated}",groupId = "${spring.kafka.wallet-updated-group}")
-    public void updateTransaction(String msg) throws JsonProcessingException {
-        logger.info("Received wallet-updated event: {}", msg);
-        JSONObject data;
-        try {
-            data = (JSONObject) jsonParser.parse(msg);
-        } catch (ParseException e) {
-            logger.error("Failed to parse wallet-updated event: {}", msg, e);
-            return;
-        }
+    public void updateTransaction(WalletUpdatedEvent event) {
+        logger.info("Received wallet-updated event: {}", event);
 
-        String walletUpdateStatus = (String) data.get("status");
-        String externalTransactionId = (String) data.get("externalTransactionId");
+        String walletUpdateStatus = event.status();
+        String externalTransactionId = event.externalTransactionId();
 
         Transaction txn = transactionRepository.getByExternalTransactionId(externalTransactionId);
 
@@ -80,7 +78,7 @@ public class TransactionService {
             logger.error("No transaction found for externalTransactionId={}", externalTransactionId);
             return;
         }
-        if (data.get("sender") == null || data.get("receiver") == null) {
+        if (event.sender() == null || event.receiver() == null) {
             // Option A: mark FAILED
             txn.setStatus(TransactionStatus.FAILED);
             transactionRepository.save(txn);
@@ -91,15 +89,27 @@ public class TransactionService {
             throw new UserNotFoundException("Sender or receiver does not exist for txnId=" + externalTransactionId);
         }
 
-        TransactionStatus transactionStatus = walletUpdateStatus.equals("success") ? TransactionStatus.SUCCESS : TransactionStatus.FAILED;
+        TransactionStatus transactionStatus = "success".equals(walletUpdateStatus) ? TransactionStatus.SUCCESS : TransactionStatus.FAILED;
         this.transactionRepository.updateTransaction(externalTransactionId, transactionStatus);
         logger.info("Transaction status updated to" + transactionStatus);
+        recordEndToEnd(txn, transactionStatus);
 
         //Created a notification service and get notified if transaction is done or not
 
 //        Transaction transaction=transactionRepository.getByExternalTransactionId(externalTransactionId);
-        String notification = objectMapper.writeValueAsString(data);
-        kafkaTemplate.send(NOTIFICATION_STATUS_TOPIC,notification);
+        kafkaTemplate.send(NOTIFICATION_STATUS_TOPIC, event.sender().toString(), event);
         logger.info("Published notification-status event for txnId={}, status={}", externalTransactionId, transactionStatus);
     }
+
+    // ✅ PENDING -> SUCCESS/FAILED latency of the whole transfer, served at /actuator/metrics/transfer.end.to.end
+    private void recordEndToEnd(Transaction txn, TransactionStatus status) {
+        if (txn.getCreatedAt() == null) {
+            return;
+        }
+        Timer.builder("transfer.end.to.end")
+                .description("Time from a transfer being created to its wallet result being applied")
+                .tag("status", status.name())
+                .register(meterRegistry)
+                .record(Duration.ofMillis(Math.max(0, System.currentTimeMillis() - txn.getCreatedAt().getTime())));
+    }
 }
@@ -0,0 +1,108 @@
+package com.example.majorproject.Services;
+
+import com.example.majorproject.Events.EventSerializer;
+import com.example.majorproject.Models.OutboxEvent;
+import com.example.majorproject.Repositories.OutboxLeaseRepository;
+import com.example.majorproject.Repositories.OutboxRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.tracing.Tracer;
+import io.micrometer.tracing.propagation.Propagator;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.Silent.class)
+public class OutboxServiceTest {
+
+    @Mock
+    private OutboxRepository outboxRepository;
+
+    @Mock
+    private OutboxLeaseRepository outboxLeaseRepository;
+
+    @Mock
+    private EventSerializer eventSerializer;
+
+    @Mock
+    private KafkaTemplate<String, byte[]> outboxKafkaTemplate;
+
+    @Mock
+    private Tracer tracer;
+
+    @Mock
+    private Propagator propagator;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private OutboxService outboxService;
+
+    @Before
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        outboxService = new OutboxService(outboxRepository, outboxLeaseRepository, eventSerializer, outboxKafkaTemplate, meterRegistry, tracer, propagator);
+        ReflectionTestUtils.setField(outboxService, "batchSize", 500);
+        ReflectionTestUtils.setField(outboxService, "sendTimeoutMs", 1000L);
+        ReflectionTestUtils.setField(outboxService, "leaseMs", 30000L);
+        when(outboxLeaseRepository.claim(anyString(), anyString(), any(), any())).thenReturn(1);
+    }
+
+    private OutboxEvent event(Long id, String traceParent) {
+        return new OutboxEvent(id, "transaction-created", "1", new byte[]{1}, Instant.now(), traceParent);
+    }
+
+    @Test
+    public void relay_publishesBatchAndDeletesIt() {
+        String traceParent = "00-0af7651916cd43dd8448eb211c80319c-b7ad6b7169203331-01";
+        when(outboxRepository.findBatch(500)).thenReturn(List.of(event(1L, traceParent), event(2L, null)));
+        when(outboxKafkaTemplate.send(any(ProducerRecord.class)))
+                .thenReturn(CompletableFuture.completedFuture(null));
+
+        outboxService.relay();
+
+        // The stored trace context travels as a header so the consumer continues the request's trace
+        verify(outboxKafkaTemplate, times(1)).send(argThat((ProducerRecord<String, byte[]> record) ->
+                record.headers().lastHeader("traceparent") != null
+                        && traceParent.equals(new String(record.headers().lastHeader("traceparent").value()))));
+        verify(outboxKafkaTemplate, times(1)).send(argThat((ProducerRecord<String, byte[]> record) ->
+                record.headers().lastHeader("traceparent") == null));
+        verify(outboxRepository, times(1)).deleteAllByIdInBatch(List.of(1L, 2L));
+        Assert.assertEquals(2.0, meterRegistry.counter("outbox.relay.published").count(), 0.0);
+    }
+
+    @Test
+    public void relay_failedSend_keepsBatchForRetry() {
+        when(outboxRepository.findBatch(500)).thenReturn(List.of(event(1L, null)));
+        when(outboxKafkaTemplate.send(any(ProducerRecord.class)))
+                .thenReturn(CompletableFuture.failedFuture(new RuntimeException("broker down")));
+
+        outboxService.relay();
+
+        verify(outboxRepository, never()).deleteAllByIdInBatch(anyList());
+        Assert.assertEquals(1.0, meterRegistry.counter("outbox.relay.failures").count(), 0.0);
+        Assert.assertEquals(0.0, meterRegistry.counter("outbox.relay.published").count(), 0.0);
+    }
+
+    @Test
+    public void relay_leaseHeldByAnotherInstance_doesNothing() {
+        when(outboxLeaseRepository.claim(anyString(), anyString(), any(), any())).thenReturn(0);
+        when(outboxLeaseRepository.create(anyString(), anyString(), any())).thenReturn(0);
+
+        outboxService.relay();
+
+        verify(outboxRepository, never()).findBatch(anyInt());
+        verify(outboxKafkaTemplate, never()).send(any(ProducerRecord.class));
+    }
+}
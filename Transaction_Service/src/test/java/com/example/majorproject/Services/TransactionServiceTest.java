@@ -2,12 +2,14 @@ package com.example.majorproject.Services;
 
 
 import com.example.majorproject.Dtos.CreateTransactionDTO;
+import com.example.majorproject.Events.TransactionCreatedEvent;
+import com.example.majorproject.Events.WalletUpdatedEvent;
 import com.example.majorproject.Exception.UserNotFoundException;
 import com.example.majorproject.Models.Transaction;
 import com.example.majorproject.Models.TransactionStatus;
 import com.example.majorproject.Repositories.TransactionRepository;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -15,11 +17,13 @@ import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
+import org.mockito.Spy;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.kafka.core.KafkaTemplate;
 
 import java.text.ParseException;
+import java.util.Date;
 
 import static org.hamcrest.Matchers.any;
 import static org.mockito.ArgumentMatchers.eq;
@@ -35,10 +39,13 @@ public class TransactionServiceTest {
     private TransactionRepository transactionRepository;
 
     @Mock
-    KafkaTemplate<String, String> kafkaTemplate;
+    KafkaTemplate<String, Object> kafkaTemplate;
 
     @Mock
-    ObjectMapper objectMapper;
+    OutboxService outboxService;
+
+    @Spy
+    MeterRegistry meterRegistry = new SimpleMeterRegistry();
 
     @Before
     public void setUp() {
@@ -47,7 +54,7 @@ public class TransactionServiceTest {
     }
 
     @Test
-    public void SuccessfulTransactionDone() throws JsonProcessingException {
+    public void SuccessfulTransactionDone() {
         // Arrange
         CreateTransactionDTO createTransactionDTO = new CreateTransactionDTO();
         createTransactionDTO.setSender(1);
@@ -55,13 +62,11 @@ public class TransactionServiceTest {
         createTransactionDTO.setAmount(5L);
         createTransactionDTO.setComment("Transaction Dto");
 
-        Transaction mockTxn = new Transaction();
+        Transaction mockTxn = createTransactionDTO.convertToTransaction();
+        mockTxn.setExternalTransactionId("txn-1");
         mockTxn.setStatus(TransactionStatus.PENDING);
 
         Mockito.when(transactionRepository.save(Mockito.any())).thenReturn(mockTxn);
-        Mockito.when(objectMapper.writeValueAsString(Mockito.any(Transaction.class))).thenReturn("Json-Object");
-        Mockito.when(kafkaTemplate.send(transactionService.TRANSACTION_CREATED_TOPIC, "Json-Object"))
-                .thenReturn(null); // we don't care about the future in this unit test
 
         // Act
         Transaction transaction = transactionService.send(createTransactionDTO);
@@ -72,55 +77,18 @@ public class TransactionServiceTest {
 
         // Verify interactions
         Mockito.verify(transactionRepository, Mockito.times(1)).save(Mockito.any());
-        Mockito.verify(objectMapper, Mockito.times(1)).writeValueAsString(Mockito.any(Transaction.class));
-        Mockito.verify(kafkaTemplate, Mockito.times(1))
-                .send(transactionService.TRANSACTION_CREATED_TOPIC, "Json-Object");
+        // Only the transfer fields are queued in the outbox, keyed by sender; the relay publishes them
+        Mockito.verify(outboxService, Mockito.times(1))
+                .enqueue(transactionService.TRANSACTION_CREATED_TOPIC, "1", new TransactionCreatedEvent(1, 2, 5L, "txn-1"));
+        Mockito.verifyNoInteractions(kafkaTemplate);
     }
 
 
 
     @Test
-    public void JsonParsingException() throws JsonProcessingException {
-        // Arrange
-        CreateTransactionDTO createTransactionDTO = new CreateTransactionDTO();
-        createTransactionDTO.setSender(1);
-        createTransactionDTO.setReceiver(2);
-        createTransactionDTO.setAmount(5L);
-        createTransactionDTO.setComment("Transaction Dto");
-
-        Transaction mockTxn = new Transaction();
-        mockTxn.setStatus(TransactionStatus.PENDING);
-
-        Mockito.when(transactionRepository.save(Mockito.any())).thenReturn(mockTxn);
-        Mockito.when(objectMapper.writeValueAsString(Mockito.any(Transaction.class))).thenThrow(new JsonProcessingException("boom") {});
-
-        // Act
-        Transaction transaction = transactionService.send(createTransactionDTO);
-
-
-        //Asserts
-        Assert.assertNotNull(transaction);
-        Assert.assertEquals(TransactionStatus.PENDING, transaction.getStatus());
-
-
-        // Verify interactions
-        Mockito.verify(transactionRepository, Mockito.times(1)).save(Mockito.any());
-        Mockito.verify(objectMapper, Mockito.times(1)).writeValueAsString(Mockito.any(Transaction.class));
-        Mockito.verify(kafkaTemplate, Mockito.never())
-                .send(Mockito.anyString(), Mockito.anyString());
-
-    }
-
-
-    @Test
-    public void updateTransaction_missingSenderOrReceiver_throwsException() throws JsonProcessingException {
+    public void updateTransaction_missingSenderOrReceiver_throwsException() {
         // Arrange
-        String msg = "{"
-                + "\"status\":\"success\","
-                + "\"externalTransactionId\":\"txn-123\","
-                // sender is missing here
-                + "\"receiver\":\"user2\""
-                + "}";
+        WalletUpdatedEvent event = new WalletUpdatedEvent(null, 2, 5L, "txn-123", "success", null, null, null);
 
         Transaction mockTxn = new Transaction();
         mockTxn.setExternalTransactionId("txn-123");
@@ -129,7 +97,7 @@ public class TransactionServiceTest {
                 .thenReturn(mockTxn);
 
         // Act + Assert
-        Assert.assertThrows(UserNotFoundException.class, () -> transactionService.updateTransaction(msg));
+        Assert.assertThrows(UserNotFoundException.class, () -> transactionService.updateTransaction(event));
 
         // Verify that txn was marked FAILED and saved
         Mockito.verify(transactionRepository, Mockito.times(1)).save(mockTxn);
@@ -154,55 +122,46 @@ public class TransactionServiceTest {
 
         // Verify no DB or Kafka interaction
         Mockito.verifyNoInteractions(transactionRepository);
+        Mockito.verifyNoInteractions(outboxService);
         Mockito.verifyNoInteractions(kafkaTemplate);
     }
 
 
     @Test
-    public void updateTransactionSuccessfully() throws JsonProcessingException {
+    public void updateTransactionSuccessfully() {
         // Arrange
-        String msg = "{"
-                + "\"status\":\"success\","
-                + "\"externalTransactionId\":\"txn-123\","
-                + "\"sender\":\"user1\","
-                + "\"receiver\":\"user2\""
-                + "}";
+        WalletUpdatedEvent event = new WalletUpdatedEvent(1, 2, 5L, "txn-123", "success", null, null, null);
 
         Transaction mockTxn = new Transaction();
         mockTxn.setExternalTransactionId("txn-123");
+        mockTxn.setCreatedAt(new Date(System.currentTimeMillis() - 250));
 
         // Repo returns a transaction for this externalTransactionId
         Mockito.when(transactionRepository.getByExternalTransactionId("txn-123"))
                 .thenReturn(mockTxn);
 
-        // ObjectMapper serializes the notification payload
-        Mockito.when(objectMapper.writeValueAsString(Mockito.any()))
-                .thenReturn("notification-json");
-
         // Act
-        transactionService.updateTransaction(msg);
+        transactionService.updateTransaction(event);
 
         // Assert
+        // 0. End-to-end latency recorded against the final status
+        Assert.assertEquals(1, meterRegistry.get("transfer.end.to.end").tag("status", "SUCCESS").timer().count());
+
         // 1. Transaction status updated to SUCCESS
         Mockito.verify(transactionRepository, Mockito.times(1))
                 .updateTransaction("txn-123", TransactionStatus.SUCCESS);
 
         // 2. Notification sent to Kafka
         Mockito.verify(kafkaTemplate, Mockito.times(1))
-                .send(eq(transactionService.NOTIFICATION_STATUS_TOPIC), eq("notification-json"));
+                .send(transactionService.NOTIFICATION_STATUS_TOPIC, "1", event);
     }
 
 
 
     @Test
-    public void updateTransactionFailed() throws JsonProcessingException {
+    public void updateTransactionFailed() {
         // Arrange
-        String msg = "{"
-                + "\"status\":\"failed\","
-                + "\"externalTransactionId\":\"txn-123\","
-                + "\"sender\":\"user1\","
-                + "\"receiver\":\"user2\""
-                + "}";
+        WalletUpdatedEvent event = new WalletUpdatedEvent(1, 2, 5L, "txn-123", "failed", null, null, null);
 
         Transaction mockTxn = new Transaction();
         mockTxn.setExternalTransactionId("txn-123");
@@ -211,12 +170,8 @@ public class TransactionServiceTest {
         Mockito.when(transactionRepository.getByExternalTransactionId("txn-123"))
                 .thenReturn(mockTxn);
 
-        // ObjectMapper serializes the notification payload
-        Mockito.when(objectMapper.writeValueAsString(Mockito.any()))
-                .thenReturn("notification-json");
-
         // Act
-        transactionService.updateTransaction(msg);
+        transactionService.updateTransaction(event);
 
         // Assert
         // 1. Transaction status updated to FAILED
@@ -225,42 +180,21 @@ public class TransactionServiceTest {
 
         // 2. Notification sent to Kafka
         Mockito.verify(kafkaTemplate, Mockito.times(1))
-                .send(eq(transactionService.NOTIFICATION_STATUS_TOPIC), eq("notification-json"));
-    }
-
-
-
-    @Test
-    public void updateTransaction_invalidJson() throws JsonProcessingException {
-        // Arrange
-        String msg = "invalid-json";
-
-        // Act
-        transactionService.updateTransaction(msg);
-
-        // Assert
-        Mockito.verify(transactionRepository, Mockito.never())
-                .updateTransaction(Mockito.anyString(), Mockito.any());
-
-        Mockito.verifyNoInteractions(kafkaTemplate);
+                .send(transactionService.NOTIFICATION_STATUS_TOPIC, "1", event);
     }
 
 
 
     @Test
-    public void updateTransaction_missingTxnId() throws JsonProcessingException {
+    public void updateTransaction_missingTxnId() {
         // Arrange
-        String msg = "{"
-                + "\"status\":\"success\","
-                + "\"sender\":\"user1\","
-                + "\"receiver\":\"user2\""
-                + "}"; // externalTransactionId missing
+        WalletUpdatedEvent event = new WalletUpdatedEvent(1, 2, 5L, null, "success", null, null, null);
 
         Mockito.when(transactionRepository.getByExternalTransactionId(null))
                 .thenReturn(null);
 
         // Act
-        transactionService.updateTransaction(msg);
+        transactionService.updateTransaction(event);
 
         // Assert
         // No transaction update since txn was null
@@ -274,25 +208,18 @@ public class TransactionServiceTest {
 
 
     @Test
-    public void updateTransaction_unexpectedStatus() throws JsonProcessingException {
+    public void updateTransaction_unexpectedStatus() {
         // Arrange
-        String msg = "{"
-                + "\"status\":\"random\","
-                + "\"externalTransactionId\":\"txn-123\","
-                + "\"sender\":\"user1\","
-                + "\"receiver\":\"user2\""
-                + "}";
+        WalletUpdatedEvent event = new WalletUpdatedEvent(1, 2, 5L, "txn-123", "random", null, null, null);
 
         Transaction mockTxn = new Transaction();
         mockTxn.setExternalTransactionId("txn-123");
 
         Mockito.when(transactionRepository.getByExternalTransactionId("txn-123"))
                 .thenReturn(mockTxn);
-        Mockito.when(objectMapper.writeValueAsString(Mockito.any()))
-                .thenReturn("notification-json");
 
         // Act
-        transactionService.updateTransaction(msg);
+        transactionService.updateTransaction(event);
 
         // Assert
         // 1. Repo still updates to FAILED
@@ -301,7 +228,7 @@ public class TransactionServiceTest {
 
         // 2. Notification still sent to Kafka
         Mockito.verify(kafkaTemplate, Mockito.times(1))
-                .send(eq(transactionService.NOTIFICATION_STATUS_TOPIC), eq("notification-json"));
+                .send(transactionService.NOTIFICATION_STATUS_TOPIC, "1", event);
     }
 
 
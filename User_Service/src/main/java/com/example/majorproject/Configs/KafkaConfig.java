@@ -1,12 +1,16 @@
 package com.example.majorproject.Configs;
 
 
+import com.example.majorproject.Events.EventSchemaRegistry;
+import com.example.majorproject.Events.EventSerializer;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -21,6 +25,15 @@ public class KafkaConfig {
     @Value("${spring.kafka.bootstrap-servers}")
     private String bootstrapServers;
 
+    @Value("${kafka.binary-topics:}")
+    private String binaryTopics;
+
+    @Value("${kafka.schema-registry:}")
+    private String schemaRegistry;
+
+    @Autowired
+    private ProducerTuning producerTuning;
+
     @Bean
     public ConsumerFactory<String, String> consumerFactory() {
         Map<String,Object> props = new HashMap<>();
@@ -30,12 +43,18 @@ public class KafkaConfig {
         return new DefaultKafkaConsumerFactory<>(props);
     }
 
-    public ProducerFactory<String, String> producerFactory() {
-        Map<String,Object> props = new HashMap<>();
+    // ✅ Tuned producer (batching, compression, idempotence) that also exports the Kafka client metrics
+    @Bean
+    public ProducerFactory<String, Object> producerFactory(MeterRegistry meterRegistry) {
+        Map<String,Object> props = producerTuning.apply(new HashMap<>());
         props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
-        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
-        return new DefaultKafkaProducerFactory<>(props);
+        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, EventSerializer.class);
+        props.put(EventSerializer.BINARY_TOPICS_CONFIG, binaryTopics);
+        props.put(EventSchemaRegistry.LOCATION_CONFIG, schemaRegistry);
+        DefaultKafkaProducerFactory<String, Object> factory = new DefaultKafkaProducerFactory<>(props);
+        factory.addListener(new MicrometerProducerListener<>(meterRegistry));
+        return factory;
     }
     @Bean
     public ObjectMapper objectMapper() {
@@ -44,7 +63,12 @@ public class KafkaConfig {
         return mapper;
     }
     @Bean
-    public KafkaTemplate<String, String> kafkaTemplate() {
-        return  new KafkaTemplate<>(producerFactory());
+    public KafkaTemplate<String, Object> kafkaTemplate(ProducerFactory<String, Object> producerFactory,
+                                                       MeterRegistry meterRegistry) {
+        KafkaTemplate<String, Object> template = new KafkaTemplate<>(producerFactory);
+        // Propagates the current trace to consumers in the record headers
+        template.setObservationEnabled(true);
+        template.setProducerListener(new SendFailureListener<>(meterRegistry));
+        return template;
     }
 }
@@ -4,7 +4,6 @@ import com.example.majorproject.Dtos.CreateUserDto;
 import com.example.majorproject.Dtos.LoginRequestDto;
 import com.example.majorproject.Models.User;
 import com.example.majorproject.Security.JwtService;
-import com.example.majorproject.Services.CustomUserDetailsService;
 import com.example.majorproject.Services.UserService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
@@ -14,6 +13,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.*;
 
@@ -27,9 +27,6 @@ public class AuthController {
     @Autowired
     private AuthenticationManager authenticationManager;
 
-    @Autowired
-    private CustomUserDetailsService userDetailsService;
-
     @Autowired
     private JwtService jwtService;
 
@@ -49,14 +46,14 @@ public class AuthController {
     @PostMapping("/login")
     public ResponseEntity<Map<String, String>> login(@Valid @RequestBody LoginRequestDto loginDto){
 
-        // 1️⃣ authenticate with AuthenticationManager
-        authenticationManager.authenticate(
+        // 1️⃣ authenticate with AuthenticationManager (it already loaded the user details)
+        Authentication authentication = authenticationManager.authenticate(
                 new UsernamePasswordAuthenticationToken(loginDto.getEmail(), loginDto.getPassword())
         );
 
         // 2️⃣ load user details
         User user = userService.findByEmail(loginDto.getEmail());
-        UserDetails userDetails = userDetailsService.loadUserByUsername(loginDto.getEmail());
+        UserDetails userDetails = (UserDetails) authentication.getPrincipal();
 
         // 3️⃣ generate token
         String token = jwtService.generateToken(userDetails,user.getId());
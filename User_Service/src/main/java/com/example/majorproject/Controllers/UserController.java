@@ -13,6 +13,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.Map;
+
 @RestController
 @RequestMapping("/user")
 public class UserController {
@@ -29,21 +31,25 @@ public class UserController {
     @PutMapping("/me")
     public User updateUser(Authentication authentication,
                            @Valid @RequestBody UpdateUserDto updateDto) {
-        String email = authentication.getName(); // email from JWT
-        User user = userService.findByEmail(email);
-        return userService.updateUser(user.getId(), updateDto);
+        return userService.updateUser(currentUserId(authentication), updateDto);
     }
 
 
-    @Operation(summary = "Get user by ID", description = "Fetches details of a user by their ID")
+    @Operation(summary = "Get current user", description = "Fetches details of the authenticated user")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "User fetched successfully"),
             @ApiResponse(responseCode = "404", description = "User not found")
     })
     @GetMapping("/me")
     public User getUserById(Authentication authentication) {
-        String email = authentication.getName();
-        return userService.findByEmail(email);
+        return userService.getUser(currentUserId(authentication));
+    }
+
+    // userId comes from the verified token, so neither endpoint has to resolve the email first
+    private Integer currentUserId(Authentication authentication) {
+        @SuppressWarnings("unchecked")
+        Map<String, Object> principal = (Map<String, Object>) authentication.getPrincipal();
+        return (Integer) principal.get("userId");
     }
 
 
@@ -0,0 +1,55 @@
+package com.example.majorproject.Events;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Serializer;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Writes event records straight to bytes, with one cached {@link ObjectWriter} per event type.
+ * Topics listed in {@value #BINARY_TOPICS_CONFIG} are written in the compact binary format instead.
+ */
+public class EventSerializer implements Serializer<Object> {
+
+    public static final String BINARY_TOPICS_CONFIG = "event.binary.topics";
+
+    private final Map<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+
+    private Set<String> binaryTopics = Set.of();
+    private BinaryEventCodec binaryCodec;
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        Object topics = configs.get(BINARY_TOPICS_CONFIG);
+        if (topics != null) {
+            binaryTopics = Arrays.stream(topics.toString().split(","))
+                    .map(String::trim)
+                    .filter(topic -> !topic.isEmpty())
+                    .collect(Collectors.toUnmodifiableSet());
+        }
+        if (!binaryTopics.isEmpty()) {
+            binaryCodec = new BinaryEventCodec(EventSchemaRegistry.fromConfigs(configs));
+        }
+    }
+
+    @Override
+    public byte[] serialize(String topic, Object event) {
+        if (event == null) {
+            return null;
+        }
+        if (binaryTopics.contains(topic)) {
+            return binaryCodec.encode(event);
+        }
+        try {
+            return writers.computeIfAbsent(event.getClass(), EventCodec.MAPPER::writerFor).writeValueAsBytes(event);
+        } catch (JsonProcessingException e) {
+            throw new SerializationException("Failed to serialize " + event.getClass().getSimpleName() + " for topic " + topic, e);
+        }
+    }
+}
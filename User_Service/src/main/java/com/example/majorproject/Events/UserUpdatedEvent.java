@@ -0,0 +1,7 @@
+package com.example.majorproject.Events;
+
+/**
+ * Published on user-updated, keyed by user id, whenever a user's name changes.
+ */
+public record UserUpdatedEvent(Integer id, String name) {
+}
@@ -1,13 +1,23 @@
 package com.example.majorproject.Repositories;
 
 import com.example.majorproject.Models.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface UserRepository extends JpaRepository<User, Integer> {
     Optional<User> findByEmail(String email);
-}
 
+    // Keyset page: the next users after afterId, up to lastId, in id order (no OFFSET scan)
+    @Query("select u from User u where u.id > :afterId and u.id <= :lastId order by u.id")
+    List<User> findPage(@Param("afterId") Integer afterId, @Param("lastId") Integer lastId, Pageable page);
+
+    @Query("select coalesce(max(u.id), 0) from User u")
+    Integer findMaxId();
+}
@@ -1,18 +1,21 @@
 package com.example.majorproject.Security;
 
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 @Component
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
@@ -20,17 +23,12 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     @Autowired
     private JwtService jwtService;
 
-    @Autowired
-    private UserDetailsService userDetailsService;
-
     @Override
     protected void doFilterInternal(HttpServletRequest request,
                                     HttpServletResponse response,
                                     FilterChain filterChain) throws ServletException, IOException {
 
         final String authHeader = request.getHeader("Authorization");
-        final String jwt;
-        final String userEmail;
 
         // 1️⃣ Check if token is present
         if (authHeader == null || !authHeader.startsWith("Bearer ")) {
@@ -38,24 +36,28 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             return;
         }
 
-        jwt = authHeader.substring(7); // remove "Bearer "
-        userEmail = jwtService.extractUsername(jwt);
+        String jwt = authHeader.substring(7); // remove "Bearer "
+        Claims claims = jwtService.verify(jwt); // cached after the first request with this token
+        String userEmail = claims.getSubject();
+        Integer userId = claims.get("userId", Integer.class);
 
-        // 2️⃣ If user not authenticated yet
-        if (userEmail != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-            UserDetails userDetails = userDetailsService.loadUserByUsername(userEmail);
+        // 2️⃣ Authenticate straight from the signed claims, like the other services (no DB lookup)
+        if (userEmail != null && userId != null && SecurityContextHolder.getContext().getAuthentication() == null) {
+            Map<String, Object> principal = new HashMap<>();
+            principal.put("email", userEmail);
+            principal.put("userId", userId);
 
-            if (jwtService.validateToken(jwt, userDetails)) {
-                UsernamePasswordAuthenticationToken authToken =
-                        new UsernamePasswordAuthenticationToken(
-                                userDetails, null, userDetails.getAuthorities());
+            List<?> roles = claims.get("roles", List.class);
+            List<SimpleGrantedAuthority> authorities = roles == null ? List.of()
+                    : roles.stream().map(role -> new SimpleGrantedAuthority(role.toString())).toList();
 
-                SecurityContextHolder.getContext().setAuthentication(authToken);
-            }
+            UsernamePasswordAuthenticationToken authToken =
+                    new UsernamePasswordAuthenticationToken(principal, null, authorities);
+
+            SecurityContextHolder.getContext().setAuthentication(authToken);
         }
 
         // 3️⃣ Continue filter chain
         filterChain.doFilter(request, response);
     }
 }
-
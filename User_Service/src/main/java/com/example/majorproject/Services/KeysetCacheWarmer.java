@@ -0,0 +1,154 @@
+package com.example.majorproject.Services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Startup copy of a MySQL table into Redis, run once the application is ready; subclasses supply how rows
+ * are read and written. The same class lives in User_Service and Wallet_Service; keep the copies identical.
+ * <p>
+ * The id range is split into {@code parallelism} slices. Each slice is walked with a keyset cursor
+ * ({@code id > last seen id}, never OFFSET) in pages of {@code batchSize}, and each page is handed to
+ * {@link #warm(List)} at once.
+ * <p>
+ * It is also a health indicator: OUT_OF_SERVICE until warm-up is over, so as part of the readiness group
+ * it keeps the instance out of rotation, with progress in its details. A failed warm-up reports UP,
+ * since reads still fall back to MySQL.
+ */
+public abstract class KeysetCacheWarmer<T> implements HealthIndicator {
+
+    private static final Logger logger = LoggerFactory.getLogger(KeysetCacheWarmer.class);
+
+    enum State {
+        PENDING, RUNNING, DONE, FAILED, DISABLED
+    }
+
+    private final String name;
+    private final boolean enabled;
+    private final int batchSize;
+    private final int parallelism;
+
+    private volatile State state = State.PENDING;
+    private volatile long total;
+    private volatile String error;
+    private volatile long startedAt;
+    private volatile long finishedAt;
+    private final AtomicLong loaded = new AtomicLong();
+    private final AtomicLong filled = new AtomicLong();
+
+    protected KeysetCacheWarmer(String name, boolean enabled, int batchSize, int parallelism) {
+        this.name = name;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    // Rows in the table, for the progress details
+    protected abstract long count();
+
+    protected abstract int maxId();
+
+    // Up to page.getPageSize() rows with afterId < id <= lastId, in id order
+    protected abstract List<T> findPage(int afterId, int lastId, Pageable page);
+
+    protected abstract int idOf(T row);
+
+    // Writes the rows Redis does not have yet and returns how many that was
+    protected abstract long warm(List<T> rows);
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            state = State.DISABLED;
+            return;
+        }
+        Thread thread = new Thread(this::warmUp, name + "-cache-warmup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    void warmUp() {
+        state = State.RUNNING;
+        startedAt = System.currentTimeMillis();
+        AtomicInteger workerCount = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread thread = new Thread(r, name + "-cache-warmup-" + workerCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            total = count();
+            int maxId = maxId();
+            int sliceSize = Math.max(1, Math.ceilDiv(maxId, parallelism));
+
+            List<Future<?>> slices = new ArrayList<>();
+            for (long afterId = 0; afterId < maxId; afterId += sliceSize) {
+                int from = (int) afterId;
+                int to = (int) Math.min(maxId, afterId + sliceSize);
+                slices.add(workers.submit(() -> warmSlice(from, to)));
+            }
+            for (Future<?> slice : slices) {
+                slice.get();
+            }
+            state = State.DONE;
+            logger.info("✅ Warmed {} of {} {} rows into Redis ({} were missing) in {} ms",
+                    loaded.get(), total, name, filled.get(), System.currentTimeMillis() - startedAt);
+        } catch (Exception e) {
+            error = e.getMessage();
+            state = State.FAILED;
+            logger.warn("{} cache warm-up failed after {} rows, reads fall back to MySQL", name, loaded.get(), e);
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+        } finally {
+            finishedAt = System.currentTimeMillis();
+            workers.shutdownNow();
+        }
+    }
+
+    // Walks (afterId, lastId] one keyset page at a time
+    private void warmSlice(int afterId, int lastId) {
+        PageRequest page = PageRequest.of(0, batchSize);
+        List<T> rows = findPage(afterId, lastId, page);
+        while (!rows.isEmpty()) {
+            filled.addAndGet(warm(rows));
+            loaded.addAndGet(rows.size());
+            if (rows.size() < batchSize) {
+                return;
+            }
+            afterId = idOf(rows.get(rows.size() - 1));
+            rows = findPage(afterId, lastId, page);
+        }
+    }
+
+    @Override
+    public Health health() {
+        Health.Builder health = state == State.PENDING || state == State.RUNNING ? Health.outOfService() : Health.up();
+        health.withDetail("state", state)
+                .withDetail("loaded", loaded.get())
+                .withDetail("filled", filled.get())
+                .withDetail("total", total);
+        if (startedAt > 0) {
+            long end = finishedAt > 0 ? finishedAt : System.currentTimeMillis();
+            health.withDetail("elapsedMs", end - startedAt);
+        }
+        if (error != null) {
+            health.withDetail("error", error);
+        }
+        return health.build();
+    }
+}
@@ -2,13 +2,28 @@ package com.example.majorproject.Services;
 
 import com.example.majorproject.Models.User;
 import com.example.majorproject.Repositories.UserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
 @Service
@@ -19,52 +34,155 @@ public class UserCacheService {
     @Autowired
     private UserRepository userRepository;
 
-    private final RedisTemplate<String, Object> redisTemplate;
+    private final StringRedisTemplate redisTemplate;
+    private final HashFields.Format hashFormat;
     private static final String USER_KEY_PREFIX = "USER:";
-
-    public UserCacheService(RedisTemplate<String, Object> redisTemplate) {
+    private static final String EMAIL_KEY_PREFIX = "USER_EMAIL:";
+    private static final RedisScript<Long> WARM_USERS_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/warm-users.lua"), Long.class);
+    private static final GenericToStringSerializer<Long> COUNT_SERIALIZER = new GenericToStringSerializer<>(Long.class);
+    private static final StringRedisSerializer STRING_SERIALIZER = new StringRedisSerializer();
+
+    private final NearCache<User> nearCache;
+    private final Counter emailIndexHits;
+    private final Counter emailIndexMisses;
+
+    public UserCacheService(StringRedisTemplate redisTemplate,
+                            RedisMessageListenerContainer listenerContainer,
+                            MeterRegistry meterRegistry,
+                            @Value("${user.cache.l1.maximum-size:100000}") long l1MaximumSize,
+                            @Value("${user.cache.l1.ttl:60s}") Duration l1Ttl,
+                            @Value("${user.cache.negative-ttl:10s}") Duration negativeTtl,
+                            @Value("${user.cache.hash-format:PLAIN}") HashFields.Format hashFormat) {
         this.redisTemplate = redisTemplate;
+        this.hashFormat = hashFormat;
+        this.nearCache = new NearCache<>("users", l1MaximumSize, l1Ttl, negativeTtl,
+                redisTemplate, listenerContainer, meterRegistry);
+        this.emailIndexHits = Counter.builder("user.cache.email.index").tag("result", "hit").register(meterRegistry);
+        this.emailIndexMisses = Counter.builder("user.cache.email.index").tag("result", "miss").register(meterRegistry);
     }
 
     // ✅ Save user as Hash + reverse index
     public void saveUser(User user) {
-        String key = USER_KEY_PREFIX + user.getId();
-        Map<String, Object> userMap = new HashMap<>();
-        userMap.put("id", user.getId());
-        userMap.put("name", user.getName());
-        userMap.put("email", user.getEmail());
-        userMap.put("phone", user.getPhone());
+        saveUser(user, null);
+    }
+
+    /**
+     * Saves the user hash and its email index in one MULTI/EXEC. When the email changed,
+     * {@code previousEmail}'s index entry is removed in the same transaction, so readers never
+     * see the new email without its index or an index pointing at the old one.
+     * Every instance's L1 copy (here and in Notification_Service) is invalidated afterwards.
+     */
+    public void saveUser(User user, String previousEmail) {
+        writeUser(user, previousEmail);
+        nearCache.invalidate(List.of(user.getId()));
+    }
+
+    /**
+     * Writes the users (and email index entries) that are not in Redis yet, in one script call
+     * per batch. Cached users are left alone, so a concurrent saveUser always wins.
+     * Returns how many user hashes were written.
+     */
+    public long warmUsers(List<User> users) {
+        List<String> keys = new ArrayList<>(users.size() * 2);
+        List<String> args = new ArrayList<>(users.size() * 6);
+        for (User user : users) {
+            String key = USER_KEY_PREFIX + user.getId();
+            keys.add(key);
+            keys.add(user.getEmail() != null ? emailKey(user.getEmail()) : key);
+            // Same field order and encoding as toHash, so warmed entries match what writeUser stores
+            Map<String, String> hash = toHash(user);
+            args.add(hash.get("id"));
+            args.add(hash.get("name"));
+            args.add(hash.get("age"));
+            args.add(hash.get("email"));
+            args.add(hash.get("phone"));
+            args.add(user.getEmail() != null ? hash.get("id") : "");
+        }
+        Long filled = redisTemplate.execute(WARM_USERS_SCRIPT,
+                STRING_SERIALIZER, COUNT_SERIALIZER, keys, args.toArray());
+        return filled == null ? 0 : filled;
+    }
 
-        // Save full hash
-        redisTemplate.opsForHash().putAll(key, userMap);
+    private void writeUser(User user, String previousEmail) {
+        String key = USER_KEY_PREFIX + user.getId();
+        Map<String, String> userMap = toHash(user);
+
+        redisTemplate.execute(new SessionCallback<List<Object>>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public List<Object> execute(RedisOperations operations) throws DataAccessException {
+                operations.multi();
+                // Save full hash
+                operations.opsForHash().putAll(key, userMap);
+                if (user.getEmail() != null) {
+                    operations.opsForValue().set(emailKey(user.getEmail()), user.getId().toString());
+                }
+                if (previousEmail != null && !emailKey(previousEmail).equals(emailKey(user.getEmail()))) {
+                    operations.delete(emailKey(previousEmail));
+                }
+                return operations.exec();
+            }
+        });
+
+        logger.debug("🔄 Stored USER:{} in Redis as Hash + email index", user.getId());
+    }
 
-        logger.info("🔄 Stored USER:{} in Redis as Hash + email index", user.getId());
+    private Map<String, String> toHash(User user) {
+        Map<String, String> userMap = new HashMap<>();
+        userMap.put("id", HashFields.encode(user.getId(), hashFormat));
+        userMap.put("name", HashFields.encode(user.getName(), hashFormat));
+        userMap.put("age", HashFields.encode(user.getAge(), hashFormat));
+        userMap.put("email", HashFields.encode(user.getEmail(), hashFormat));
+        userMap.put("phone", HashFields.encode(user.getPhone(), hashFormat));
+        return userMap;
     }
 
 
     // ✅ Fetch user from Redis Hash (fallback to DB if not found)
     public User getUserById(Integer id) {
-        String key = USER_KEY_PREFIX + id;
-
-        // 1️⃣ Try Redis Hash
-        Map<Object, Object> userMap = redisTemplate.opsForHash().entries(key);
-        if (!userMap.isEmpty()) {
-            logger.info("✅ Cache hit for USER:{}", id);
-            return mapToUser(userMap);
-        }
+        // 1️⃣ Try L1, then the Redis Hash, 2️⃣ then the DB (one load per id however many callers miss)
+        return nearCache.get(id, this::getUserFromCache, this::loadUser);
+    }
 
-        // 2️⃣ Fallback to DB
-        logger.info("❌ Cache miss for USER:{}, fetching from DB", id);
+    private User loadUser(Integer id) {
+        // Counted and timed by the near cache as near.cache.db
         User user = userRepository.findById(id).orElse(null);
 
         if (user != null) {
-            saveUser(user);
-            logger.info("🔄 Stored USER:{} in Redis after DB fetch", id);
+            // Fill only if still absent, so a saveUser that ran after this read is not overwritten by it.
+            // A fill does not change the user, so other instances need no invalidation
+            warmUsers(List.of(user));
         }
 
         return user;
     }
 
+    // ✅ Resolve email -> id through the index, then read the hash (fallback to DB if either misses)
+    public User getUserByEmail(String email) {
+        String id = redisTemplate.opsForValue().get(emailKey(email));
+        if (id != null) {
+            User user = getUserById(Integer.valueOf(id));
+            // Guard against an index entry left behind by a concurrent email change
+            if (user != null && email.equalsIgnoreCase(user.getEmail())) {
+                emailIndexHits.increment();
+                return user;
+            }
+        }
+
+        emailIndexMisses.increment();
+        User user = nearCache.loadFromDb(() -> userRepository.findByEmail(email).orElse(null));
+        if (user != null) {
+            // Fill only if still absent, as in loadUser
+            warmUsers(List.of(user));
+        }
+        return user;
+    }
+
+    private static String emailKey(String email) {
+        return email == null ? null : EMAIL_KEY_PREFIX + email.toLowerCase(Locale.ROOT);
+    }
+
     // ✅ Convenience method to fetch without DB fallback
     public User getUserFromCache(Integer userId) {
         String key = USER_KEY_PREFIX + userId;
@@ -75,10 +193,11 @@ public class UserCacheService {
     // 🔧 Helper: Convert Map → User
     private User mapToUser(Map<Object, Object> map) {
         User user = new User();
-        user.setId((Integer) map.get("id"));
-        user.setName((String) map.get("name"));
-        user.setEmail((String) map.get("email"));
-        user.setPhone((String) map.get("phone"));
+        user.setId(HashFields.toInteger(map.get("id")));
+        user.setName(HashFields.text(map.get("name")));
+        user.setAge(HashFields.toInteger(map.get("age")));
+        user.setEmail(HashFields.text(map.get("email")));
+        user.setPhone(HashFields.text(map.get("phone")));
         return user;
     }
 }
@@ -0,0 +1,59 @@
+package com.example.majorproject.Services;
+
+import com.example.majorproject.Models.User;
+import com.example.majorproject.Repositories.UserRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Copies every user (and email index entry) from MySQL into Redis once the service has started,
+ * so after a deploy or a Redis restart logins and lookups do not all fall through to the database, and
+ * Notification_Service, which only reads {@code USER:{id}} from Redis, finds every recipient. Each page
+ * is written with one script call that only fills users Redis does not have yet.
+ * <p>
+ * Registered as the {@code userCacheWarmup} health indicator of the readiness group.
+ */
+@Component("userCacheWarmup")
+public class UserCacheWarmer extends KeysetCacheWarmer<User> {
+
+    private final UserRepository userRepository;
+    private final UserCacheService userCacheService;
+
+    public UserCacheWarmer(UserRepository userRepository,
+                           UserCacheService userCacheService,
+                           @Value("${user.cache.warmup.enabled:true}") boolean enabled,
+                           @Value("${user.cache.warmup.batch-size:1000}") int batchSize,
+                           @Value("${user.cache.warmup.parallelism:4}") int parallelism) {
+        super("user", enabled, batchSize, parallelism);
+        this.userRepository = userRepository;
+        this.userCacheService = userCacheService;
+    }
+
+    @Override
+    protected long count() {
+        return userRepository.count();
+    }
+
+    @Override
+    protected int maxId() {
+        return userRepository.findMaxId();
+    }
+
+    @Override
+    protected List<User> findPage(int afterId, int lastId, Pageable page) {
+        return userRepository.findPage(afterId, lastId, page);
+    }
+
+    @Override
+    protected int idOf(User user) {
+        return user.getId();
+    }
+
+    @Override
+    protected long warm(List<User> users) {
+        return userCacheService.warmUsers(users);
+    }
+}
@@ -5,13 +5,11 @@ import com.example.majorproject.Dtos.CreateUserDto;
 
 
 import com.example.majorproject.Dtos.UpdateUserDto;
+import com.example.majorproject.Events.UserCreatedEvent;
+import com.example.majorproject.Events.UserUpdatedEvent;
 import com.example.majorproject.Models.User;
 import com.example.majorproject.Repositories.UserRepository;
 import com.example.majorproject.Security.JwtService;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -21,6 +19,7 @@ import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
 import java.util.NoSuchElementException;
+import java.util.Objects;
 
 
 @Service
@@ -29,12 +28,15 @@ public class UserService {
     @Value("${kafka.topic.user-created}")
     private String USER_CREATED_TOPIC;
 
+    @Value("${kafka.topic.user-updated}")
+    private String USER_UPDATED_TOPIC;
+
 
     private final Logger logger = LoggerFactory.getLogger(UserService.class);
 
 
     @Autowired
-    KafkaTemplate<String, String> kafkaTemplate;
+    KafkaTemplate<String, Object> kafkaTemplate;
 
     @Autowired
     UserCacheService userCacheService;
@@ -43,9 +45,6 @@ public class UserService {
     UserRepository userRepository;
 
 
-    @Autowired
-    ObjectMapper objectMapper;
-
     @Autowired
     PasswordEncoder passwordEncoder;
 
@@ -59,22 +58,18 @@ public class UserService {
             userRepository.save(user);
             userCacheService.saveUser(user);
             Integer userId = user.getId();
-            JSONObject jsonObject = new JSONObject();
-            jsonObject.put("id", userId);
-            try {
-                String data = objectMapper.writeValueAsString(jsonObject);
-                logger.info("data to be published - {}", data);
-                logger.info("Greeting notification send for UserId - {}", user.getId());
-                this.kafkaTemplate.send(USER_CREATED_TOPIC, data);
-            } catch (JsonProcessingException e) {
-                logger.error("Failed to serialize user for Kafka", e);
-            }
+            UserCreatedEvent event = new UserCreatedEvent(userId, user.getName());
+            logger.info("data to be published - {}", event);
+            logger.info("Greeting notification send for UserId - {}", user.getId());
+            this.kafkaTemplate.send(USER_CREATED_TOPIC, userId.toString(), event);
             return user;
     }
 
         public User updateUser(Integer id, UpdateUserDto updateDto) {
         User existingUser = userRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("User not found with id: " + id));
+        String previousEmail = existingUser.getEmail();
+        String previousName = existingUser.getName();
 
         if (updateDto.getName() != null) existingUser.setName(updateDto.getName());
         if (updateDto.getAge() != null) existingUser.setAge(updateDto.getAge());
@@ -82,15 +77,33 @@ public class UserService {
         if (updateDto.getPhone() != null) existingUser.setPhone(updateDto.getPhone());
 
         User updatedUser = userRepository.save(existingUser);
-        userCacheService.saveUser(updatedUser);
+        // Moves the email index along with the hash if the email changed
+        userCacheService.saveUser(updatedUser, previousEmail);
+        // ✅ Consumers keep their own copy of user names, so renames are published
+        if (!Objects.equals(previousName, updatedUser.getName())) {
+            kafkaTemplate.send(USER_UPDATED_TOPIC, id.toString(), new UserUpdatedEvent(id, updatedUser.getName()));
+        }
 
         return updatedUser; // 👈 returned as JSON automatically
     }
 
 
+    // ✅ Served from the Redis hash, falling back to MySQL on a miss
+    public User getUser(Integer id) {
+        User user = userCacheService.getUserById(id);
+        if (user == null) {
+            throw new NoSuchElementException("User not found with id: " + id);
+        }
+        return user;
+    }
+
+    // ✅ Read-through the Redis email index; MySQL is only hit on a miss
     public User findByEmail(String email) {
-        return userRepository.findByEmail(email)
-                .orElseThrow(() -> new NoSuchElementException("User not found with email: " + email));
+        User user = userCacheService.getUserByEmail(email);
+        if (user == null) {
+            throw new NoSuchElementException("User not found with email: " + email);
+        }
+        return user;
     }
 
 }
@@ -0,0 +1,19 @@
+-- Fills USER:{id} hashes and their USER_EMAIL:{email} index that are not cached yet, leaving
+-- existing entries untouched so a concurrent saveUser always wins.
+-- KEYS[2i-1] = user key, KEYS[2i] = email index key (the user key again when there is no email)
+-- ARGV[6i-5..6i] = id, name, age, email, phone of that user, then the index value (empty when no email)
+-- Returns the number of hashes written
+local filled = 0
+for i = 1, #KEYS, 2 do
+    local key = KEYS[i]
+    local base = (i - 1) * 3
+    if redis.call('EXISTS', key) == 0 then
+        redis.call('HSET', key, 'id', ARGV[base + 1], 'name', ARGV[base + 2], 'age', ARGV[base + 3],
+                'email', ARGV[base + 4], 'phone', ARGV[base + 5])
+        filled = filled + 1
+    end
+    if ARGV[base + 6] ~= '' then
+        redis.call('SET', KEYS[i + 1], ARGV[base + 6], 'NX')
+    end
+end
+return filled
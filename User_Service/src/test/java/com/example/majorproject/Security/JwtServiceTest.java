@@ -0,0 +1,39 @@
+package com.example.majorproject.Security;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.List;
+
+public class JwtServiceTest {
+
+    private final JwtService jwtService = new JwtService();
+
+    private final UserDetails userDetails = new User("alice@example.com", "secret", List.of());
+
+    @Test
+    public void verify_returnsClaimsAndCachesThem() {
+        String token = jwtService.generateToken(userDetails, 7);
+
+        Claims first = jwtService.verify(token);
+        Claims second = jwtService.verify(token);
+
+        Assert.assertEquals("alice@example.com", first.getSubject());
+        Assert.assertEquals(Integer.valueOf(7), first.get("userId", Integer.class));
+        // Second lookup is served from the cache, not re-parsed
+        Assert.assertSame(first, second);
+        Assert.assertTrue(jwtService.validateToken(token, userDetails));
+    }
+
+    @Test
+    public void verify_tamperedToken_throws() {
+        String token = jwtService.generateToken(userDetails, 7);
+        String tampered = token.substring(0, token.length() - 2) + (token.endsWith("A") ? "BB" : "AA");
+
+        Assert.assertThrows(JwtException.class, () -> jwtService.verify(tampered));
+    }
+}
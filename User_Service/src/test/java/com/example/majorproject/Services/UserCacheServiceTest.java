@@ -0,0 +1,118 @@
+package com.example.majorproject.Services;
+
+import com.example.majorproject.Models.User;
+import com.example.majorproject.Repositories.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class UserCacheServiceTest {
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    @Mock
+    private RedisMessageListenerContainer listenerContainer;
+
+    @Mock
+    private HashOperations<String, Object, Object> hashOperations;
+
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+
+    private UserCacheService userCacheService;
+
+    @Before
+    public void setUp() {
+        userCacheService = new UserCacheService(redisTemplate, listenerContainer, new SimpleMeterRegistry(),
+                1000, Duration.ofMinutes(1), Duration.ofSeconds(10), HashFields.Format.PLAIN);
+        ReflectionTestUtils.setField(userCacheService, "userRepository", userRepository);
+        lenient().when(redisTemplate.<Object, Object>opsForHash()).thenReturn(hashOperations);
+        lenient().when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+    }
+
+    private static User user(Integer id, String name, String email) {
+        User user = new User();
+        user.setId(id);
+        user.setName(name);
+        user.setEmail(email);
+        return user;
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void getUserById_missFillsRedisOnlyIfAbsent() {
+        when(hashOperations.entries("USER:1")).thenReturn(Map.of());
+        when(userRepository.findById(1)).thenReturn(Optional.of(user(1, "Alice", "alice@example.com")));
+
+        Assert.assertEquals("Alice", userCacheService.getUserById(1).getName());
+
+        // The fill goes through warm-users.lua, which leaves a hash written by a concurrent saveUser alone
+        verify(redisTemplate, times(1)).execute(any(RedisScript.class), any(RedisSerializer.class),
+                any(RedisSerializer.class), eq(List.of("USER:1", "USER_EMAIL:alice@example.com")), any(Object[].class));
+        verify(redisTemplate, never()).execute(any(SessionCallback.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void getUserByEmail_indexMissFillsRedisOnlyIfAbsent() {
+        when(userRepository.findByEmail("bob@example.com")).thenReturn(Optional.of(user(2, "Bob", "bob@example.com")));
+
+        Assert.assertEquals(Integer.valueOf(2), userCacheService.getUserByEmail("bob@example.com").getId());
+
+        verify(redisTemplate, times(1)).execute(any(RedisScript.class), any(RedisSerializer.class),
+                any(RedisSerializer.class), anyList(), any(Object[].class));
+        verify(redisTemplate, never()).execute(any(SessionCallback.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void earlyRefresh_fillsRedisOnlyIfAbsent() throws Exception {
+        UserCacheService shortLived = new UserCacheService(redisTemplate, listenerContainer, new SimpleMeterRegistry(),
+                1000, Duration.ofMillis(400), Duration.ofSeconds(10), HashFields.Format.PLAIN);
+        ReflectionTestUtils.setField(shortLived, "userRepository", userRepository);
+        // A slow first read makes an early refresh near certain once the entry is old
+        when(hashOperations.entries("USER:1")).thenAnswer(invocation -> {
+            Thread.sleep(200);
+            return Map.of("id", "1", "name", "Alice", "email", "alice@example.com");
+        }).thenReturn(Map.of());
+        when(userRepository.findById(1)).thenReturn(Optional.of(user(1, "Alice", "alice@example.com")));
+
+        Assert.assertEquals("Alice", shortLived.getUserById(1).getName());
+        Thread.sleep(250);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+        while (mockingDetails(userRepository).getInvocations().isEmpty() && System.nanoTime() < deadline) {
+            shortLived.getUserById(1);
+        }
+
+        verify(userRepository, timeout(1000)).findById(1);
+        verify(redisTemplate, timeout(1000)).execute(any(RedisScript.class), any(RedisSerializer.class),
+                any(RedisSerializer.class), anyList(), any(Object[].class));
+        verify(redisTemplate, never()).execute(any(SessionCallback.class));
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.majorproject.Services;
+
+import com.example.majorproject.Models.User;
+import com.example.majorproject.Repositories.UserRepository;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.data.domain.Pageable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.Silent.class)
+public class UserCacheWarmerTest {
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private UserCacheService userCacheService;
+
+    private final List<Integer> warmed = Collections.synchronizedList(new ArrayList<>());
+
+    @Before
+    public void setUp() {
+        // Ids 1..25 with gaps every 7th id, as after deleted rows
+        List<User> table = IntStream.rangeClosed(1, 25).filter(id -> id % 7 != 0)
+                .mapToObj(id -> User.builder().id(id).name("user" + id).email("user" + id + "@example.com").build())
+                .toList();
+        when(userRepository.count()).thenReturn((long) table.size());
+        when(userRepository.findMaxId()).thenReturn(25);
+        when(userRepository.findPage(anyInt(), anyInt(), any(Pageable.class))).thenAnswer(invocation -> {
+            int afterId = invocation.getArgument(0);
+            int lastId = invocation.getArgument(1);
+            Pageable page = invocation.getArgument(2);
+            return table.stream().filter(u -> u.getId() > afterId && u.getId() <= lastId)
+                    .limit(page.getPageSize()).toList();
+        });
+        when(userCacheService.warmUsers(anyList())).thenAnswer(invocation -> {
+            List<User> batch = invocation.getArgument(0);
+            batch.forEach(u -> warmed.add(u.getId()));
+            return (long) batch.size();
+        });
+    }
+
+    @Test
+    public void warmUp_writesEveryUserOnceAndReportsReady() {
+        UserCacheWarmer warmer = new UserCacheWarmer(userRepository, userCacheService, true, 4, 3);
+        Assert.assertEquals(Status.OUT_OF_SERVICE, warmer.health().getStatus());
+
+        warmer.warmUp();
+
+        List<Integer> expected = IntStream.rangeClosed(1, 25).filter(id -> id % 7 != 0).boxed().toList();
+        Assert.assertEquals(expected, warmed.stream().sorted().toList());
+        Assert.assertEquals(Status.UP, warmer.health().getStatus());
+        Assert.assertEquals(22L, warmer.health().getDetails().get("loaded"));
+    }
+
+    @Test
+    public void warmUpFailure_stillReportsReady() {
+        when(userCacheService.warmUsers(anyList())).thenThrow(new IllegalStateException("Redis down"));
+        UserCacheWarmer warmer = new UserCacheWarmer(userRepository, userCacheService, true, 4, 3);
+
+        warmer.warmUp();
+
+        Assert.assertEquals(Status.UP, warmer.health().getStatus());
+        Assert.assertEquals("FAILED", warmer.health().getDetails().get("state").toString());
+    }
+
+    @Test
+    public void disabled_reportsReadyWithoutReadingUsers() {
+        UserCacheWarmer warmer = new UserCacheWarmer(userRepository, userCacheService, false, 4, 3);
+
+        warmer.start();
+
+        Assert.assertEquals(Status.UP, warmer.health().getStatus());
+        Assert.assertEquals("DISABLED", warmer.health().getDetails().get("state").toString());
+        verifyNoInteractions(userRepository, userCacheService);
+    }
+}
@@ -2,11 +2,10 @@ package com.example.majorproject.Services;
 
 import com.example.majorproject.Dtos.CreateUserDto;
 import com.example.majorproject.Dtos.UpdateUserDto;
+import com.example.majorproject.Events.UserCreatedEvent;
+import com.example.majorproject.Events.UserUpdatedEvent;
 import com.example.majorproject.Models.User;
 import com.example.majorproject.Repositories.UserRepository;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import org.json.simple.JSONObject;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -42,14 +41,11 @@ public class UserServiceTest {
     @Mock
     UserCacheService userCacheService;
 
-    @Mock
-    ObjectMapper objectMapper;
-
     @Mock
     PasswordEncoder passwordEncoder;
 
     @Mock
-    KafkaTemplate<String, String> kafkaTemplate;
+    KafkaTemplate<String, Object> kafkaTemplate;
 
 
     @Before
@@ -57,10 +53,11 @@ public class UserServiceTest {
         MockitoAnnotations.openMocks(this);
         // Manually set the Kafka topic (because @Value won't inject in unit tests)
         ReflectionTestUtils.setField(userService, "USER_CREATED_TOPIC", "user-created");
+        ReflectionTestUtils.setField(userService, "USER_UPDATED_TOPIC", "user-updated");
     }
 
     @Test
-    public void testCreateUser_Success() throws JsonProcessingException {
+    public void testCreateUser_Success() {
         CreateUserDto dto = new CreateUserDto("John", 25, "john@example.com", "1234567890", "password123");
         User mockUser=dto.convertToUser();
 
@@ -70,7 +67,6 @@ public class UserServiceTest {
             u.setId(1); // simulate DB assigning ID
             return u;
         });
-        when(objectMapper.writeValueAsString(any(JSONObject.class))).thenReturn("{\"id\":1}");
 
         User createdUser=userService.create(dto);
 
@@ -85,28 +81,7 @@ public class UserServiceTest {
         // Verify interactions
         verify(userRepository, times(1)).save(any(User.class));
         verify(userCacheService, times(1)).saveUser(any(User.class));
-        verify(kafkaTemplate, times(1)).send(eq("user-created"), anyString());
-    }
-
-
-    @Test
-    public void catchJsonParseException() throws JsonProcessingException {
-        CreateUserDto dto = new CreateUserDto("John", 25, "john@example.com", "1234567890", "password123");
-        User mockUser=dto.convertToUser();
-
-        when(passwordEncoder.encode(anyString())).thenReturn("encodedPassword");
-        when(userRepository.save(any(User.class))).thenAnswer(invocation -> {
-            User u = invocation.getArgument(0);
-            u.setId(1); // simulate DB assigning ID
-            return u;
-        });
-        when(objectMapper.writeValueAsString(any(JSONObject.class))).thenThrow(JsonProcessingException.class);
-
-        User createdUser=userService.create(dto);
-
-
-        verify(userRepository, times(1)).save(any(User.class));
-        verify(userCacheService, times(1)).saveUser(any(User.class));
+        verify(kafkaTemplate, times(1)).send("user-created", "1", new UserCreatedEvent(1, "John"));
     }
 
 
@@ -140,9 +115,29 @@ public class UserServiceTest {
 
         verify(userRepository, times(1)).findById(userId);
         verify(userRepository, times(1)).save(existingUser);
-        verify(userCacheService, times(1)).saveUser(existingUser);
+        verify(userCacheService, times(1)).saveUser(existingUser, "old@example.com");
+        verify(kafkaTemplate, times(1)).send("user-updated", "1", new UserUpdatedEvent(1, "New Name"));
+
+
+    }
+
+
+    @Test
+    public void testUpdateUser_sameName_publishesNothing() {
+        User existingUser = new User();
+        existingUser.setId(1);
+        existingUser.setName("Alice");
+        existingUser.setEmail("alice@example.com");
 
+        UpdateUserDto updateDto = new UpdateUserDto();
+        updateDto.setAge(30);
+
+        when(userRepository.findById(1)).thenReturn(Optional.of(existingUser));
+        when(userRepository.save(any(User.class))).thenAnswer(invocation -> invocation.getArgument(0));
 
+        userService.updateUser(1, updateDto);
+
+        verifyNoInteractions(kafkaTemplate);
     }
 
 
@@ -173,11 +168,12 @@ public class UserServiceTest {
         User user=new User();
         user.setEmail(UserEmail);
 
-        when(userRepository.findByEmail(UserEmail)).thenReturn(Optional.of(user));
+        when(userCacheService.getUserByEmail(UserEmail)).thenReturn(user);
 
         User foundUser=userService.findByEmail(UserEmail);
 
         Assert.assertNotNull(foundUser);
+        verifyNoInteractions(userRepository);
     }
 
 
@@ -185,7 +181,7 @@ public class UserServiceTest {
     public void testFindByEmail_UserNotFound() {
         // Arrange
         String email = "missing@example.com";
-        when(userRepository.findByEmail(email)).thenReturn(Optional.empty());
+        when(userCacheService.getUserByEmail(email)).thenReturn(null);
 
         // Act & Assert
         NoSuchElementException exception = assertThrows(
@@ -194,11 +190,25 @@ public class UserServiceTest {
         );
 
         Assert.assertEquals("User not found with email: " + email, exception.getMessage());
-        verify(userRepository, times(1)).findByEmail(email);
+        verify(userCacheService, times(1)).getUserByEmail(email);
     }
 
 
+    @Test
+    public void testGetUser_servedFromCache() {
+        User cached = new User();
+        cached.setId(1);
+        cached.setEmail("john@example.com");
+        when(userCacheService.getUserById(1)).thenReturn(cached);
+
+        Assert.assertSame(cached, userService.getUser(1));
+        verifyNoInteractions(userRepository);
+    }
 
+    @Test
+    public void testGetUser_notFound() {
+        when(userCacheService.getUserById(1)).thenReturn(null);
 
+        assertThrows(NoSuchElementException.class, () -> userService.getUser(1));
+    }
 }
-
@@ -1,50 +1,232 @@
 package com.example.majorproject.Configs;
 
+import com.example.majorproject.Events.EventDeserializer;
+import com.example.majorproject.Events.EventSchemaRegistry;
+import com.example.majorproject.Events.EventSerializer;
+import com.example.majorproject.Events.TransactionCreatedEvent;
+import com.example.majorproject.Events.UserCreatedEvent;
+import com.example.majorproject.Exceptions.LedgerBusyException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.Getter;
 import lombok.Setter;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.NewTopic;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.errors.TopicExistsException;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.apache.kafka.common.serialization.StringSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.config.TopicBuilder;
 import org.springframework.kafka.core.*;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.kafka.support.serializer.DelegatingByTopicDeserializer;
+import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
+import org.springframework.util.backoff.FixedBackOff;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Pattern;
 
 @Configuration
 public class KafkaConfig {
 
+    private static final Logger logger = LoggerFactory.getLogger(KafkaConfig.class);
+
     @Value("${spring.kafka.bootstrap-servers}")
     private String bootstrapServers;
 
+    @Value("${kafka.binary-topics:}")
+    private String binaryTopics;
+
+    @Value("${kafka.schema-registry:}")
+    private String schemaRegistry;
+
+
+    @Value("${wallet.kafka.batch.max-records:500}")
+    private int batchMaxRecords;
+
+    @Value("${wallet.kafka.batch.max-wait-ms:50}")
+    private int batchMaxWaitMs;
+
+    @Value("${wallet.kafka.batch.min-bytes:1}")
+    private int batchMinBytes;
+
+
+    @Value("${wallet.kafka.concurrency:1}")
+    private int concurrency;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    @Value("${kafka.topics.wallet-updated}")
+    private String walletUpdatedTopic;
+
+    @Value("${kafka.topic.user-created}")
+    private String userCreatedTopic;
+
+    @Value("${kafka.topics.transaction-created}")
+    private String transactionCreatedTopic;
+
+    @Value("${kafka.partitions.wallet-updated:1}")
+    private int walletUpdatedPartitions;
+
+    @Value("${wallet.ledger.busy-backoff-ms:100}")
+    private long ledgerBusyBackOffMs;
+
+    @Autowired
+    private ProducerTuning producerTuning;
+
+
+    @Bean
+    public ConsumerFactory<String, Object> consumerFactory() {
+        return eventConsumerFactory(consumerProps());
+    }
+
+    // ✅ Records are keyed by sender userId, so each consumer thread owns a set of partitions
+    // and transfers from the same sender are still applied in order.
+    // Observation continues the producer's trace from the record headers and times each listener call
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, Object> kafkaListenerContainerFactory(
+            ConsumerFactory<String, Object> consumerFactory, MeterRegistry meterRegistry) {
+        ConcurrentKafkaListenerContainerFactory<String, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactory);
+        factory.setConcurrency(concurrency);
+        factory.setRecordInterceptor(new QueueWaitInterceptor<>(meterRegistry));
+        factory.getContainerProperties().setObservationEnabled(true);
+        applyThreading(factory);
+        return factory;
+    }
+
+    // ✅ Hands a whole poll to the listener: up to max-records, waiting at most max-wait-ms for min-bytes
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, Object> batchKafkaListenerContainerFactory(MeterRegistry meterRegistry) {
+        Map<String,Object> props = consumerProps();
+        props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, batchMaxRecords);
+        props.put(ConsumerConfig.FETCH_MAX_WAIT_MS_CONFIG, batchMaxWaitMs);
+        props.put(ConsumerConfig.FETCH_MIN_BYTES_CONFIG, batchMinBytes);
+
+        ConcurrentKafkaListenerContainerFactory<String, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(eventConsumerFactory(props));
+        factory.setBatchListener(true);
+        factory.setConcurrency(concurrency);
+        factory.setBatchInterceptor(new QueueWaitInterceptor<>(meterRegistry));
+        applyThreading(factory);
+        return factory;
+    }
+
+    // ✅ Ledger mode: the listener acknowledges each record from a ledger thread once its transfer is persisted.
+    // Async acks let those acknowledgments arrive out of order; offsets are committed only up to the first
+    // record still in flight. A busy ledger is retried on the same record until it has room again.
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, Object> ledgerKafkaListenerContainerFactory(
+            ConsumerFactory<String, Object> consumerFactory, MeterRegistry meterRegistry) {
+        ConcurrentKafkaListenerContainerFactory<String, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactory);
+        factory.setConcurrency(concurrency);
+        factory.setRecordInterceptor(new QueueWaitInterceptor<>(meterRegistry));
+        factory.getContainerProperties().setObservationEnabled(true);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        factory.getContainerProperties().setAsyncAcks(true);
+        DefaultErrorHandler errorHandler = new DefaultErrorHandler();
+        errorHandler.setBackOffFunction((record, ex) -> NestedExceptionUtils.getMostSpecificCause(ex) instanceof LedgerBusyException
+                ? new FixedBackOff(ledgerBusyBackOffMs, FixedBackOff.UNLIMITED_ATTEMPTS) : null);
+        factory.setCommonErrorHandler(errorHandler);
+        applyThreading(factory);
+        return factory;
+    }
 
+    // ✅ Create-only: runs before the listener containers start, like KafkaAdmin's own NewTopic handling,
+    // but never adds partitions to an existing topic (see kafka.partitions.wallet-updated)
     @Bean
-    public ConsumerFactory<String, String> consumerFactory() {
+    public SmartInitializingSingleton walletUpdatedTopic(KafkaAdmin kafkaAdmin) {
+        return () -> createIfMissing(kafkaAdmin,
+                TopicBuilder.name(walletUpdatedTopic).partitions(walletUpdatedPartitions).build());
+    }
+
+    // Creates the topic with the configured partitions when it does not exist yet and leaves an existing topic
+    // alone: adding partitions moves keys to other partitions and breaks per-key ordering
+    private static void createIfMissing(KafkaAdmin kafkaAdmin, NewTopic topic) {
+        try (AdminClient admin = AdminClient.create(kafkaAdmin.getConfigurationProperties())) {
+            admin.createTopics(List.of(topic)).all().get(kafkaAdmin.getOperationTimeout(), TimeUnit.SECONDS);
+            logger.info("Created topic {} with {} partitions", topic.name(), topic.numPartitions());
+        } catch (ExecutionException e) {
+            if (!(e.getCause() instanceof TopicExistsException)) {
+                logger.warn("Could not create topic {}", topic.name(), e.getCause());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (TimeoutException e) {
+            logger.warn("Timed out creating topic {}", topic.name());
+        }
+    }
+
+    private Map<String,Object> consumerProps() {
         Map<String,Object> props = new HashMap<>();
         props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
-        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
-        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
-        return new DefaultKafkaConsumerFactory<>(props);
+        props.put(EventSchemaRegistry.LOCATION_CONFIG, schemaRegistry);
+        return props;
     }
 
-    public ProducerFactory<String, String> producerFactory() {
-        Map<String,Object> props = new HashMap<>();
+    // ✅ Each topic is decoded straight from bytes into its event record; a record that cannot be
+    // decoded is handed to the error handler and skipped instead of blocking the partition
+    private ConsumerFactory<String, Object> eventConsumerFactory(Map<String,Object> props) {
+        return new DefaultKafkaConsumerFactory<>(props, StringDeserializer::new,
+                () -> new ErrorHandlingDeserializer<>(new DelegatingByTopicDeserializer(Map.of(
+                        Pattern.compile(Pattern.quote(userCreatedTopic)), new EventDeserializer<>(UserCreatedEvent.class),
+                        Pattern.compile(Pattern.quote(transactionCreatedTopic)), new EventDeserializer<>(TransactionCreatedEvent.class)),
+                        new ByteArrayDeserializer())));
+    }
+
+    // ✅ Tuned producer (batching, compression, idempotence) that also exports the Kafka client metrics
+    @Bean
+    public ProducerFactory<String, Object> producerFactory(MeterRegistry meterRegistry) {
+        Map<String,Object> props = producerTuning.apply(new HashMap<>());
         props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
-        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
-        return new DefaultKafkaProducerFactory<>(props);
+        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, EventSerializer.class);
+        props.put(EventSerializer.BINARY_TOPICS_CONFIG, binaryTopics);
+        props.put(EventSchemaRegistry.LOCATION_CONFIG, schemaRegistry);
+        DefaultKafkaProducerFactory<String, Object> factory = new DefaultKafkaProducerFactory<>(props);
+        factory.addListener(new MicrometerProducerListener<>(meterRegistry));
+        return factory;
     }
     @Bean
     ObjectMapper objectMapper() {
         return new ObjectMapper();
     }
     @Bean
-    public KafkaTemplate<String, String> kafkaTemplate() {
-        return  new KafkaTemplate<>(producerFactory());
+    public KafkaTemplate<String, Object> kafkaTemplate(ProducerFactory<String, Object> producerFactory,
+                                                       MeterRegistry meterRegistry) {
+        KafkaTemplate<String, Object> template = new KafkaTemplate<>(producerFactory);
+        // Propagates the current trace to consumers in the record headers
+        template.setObservationEnabled(true);
+        template.setProducerListener(new SendFailureListener<>(meterRegistry));
+        return template;
     }
 
+    // ✅ In virtual-thread mode the listener containers poll and run listeners on virtual threads as well
+    private void applyThreading(ConcurrentKafkaListenerContainerFactory<String, ?> factory) {
+        if (virtualThreads) {
+            SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("kafka-listener-");
+            executor.setVirtualThreads(true);
+            factory.getContainerProperties().setListenerTaskExecutor(executor);
+        }
+    }
 }
@@ -7,6 +7,7 @@ import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
 
 import java.util.Map;
 
@@ -34,4 +35,20 @@ public class WalletController {
         Integer userId = (Integer) principal.get("userId");
         return walletService.getBalance(userId);
     }
+
+    @Operation(
+            summary = "Get wallet balance (non-blocking)",
+            description = "Same result as GET /wallet/me, but the request thread is released while Redis is read"
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Successfully retrieved wallet balance"),
+            @ApiResponse(responseCode = "404", description = "Wallet not found for the given userId")
+    })
+    @GetMapping("/me/reactive")
+    public Mono<Long> getWalletReactive(Authentication authentication) {
+        @SuppressWarnings("unchecked")
+        Map<String, Object> principal = (Map<String, Object>) authentication.getPrincipal();
+        Integer userId = (Integer) principal.get("userId");
+        return walletService.getBalanceReactive(userId);
+    }
 }
@@ -0,0 +1,116 @@
+package com.example.majorproject.Events;
+
+import org.apache.kafka.common.errors.SerializationException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Local stand-in for a schema registry. Schemas are read from a properties file, by default
+ * {@code schemas/event-schemas.properties} on the classpath:
+ * <pre>
+ * TransactionCreatedEvent.id=2
+ * TransactionCreatedEvent.v1=sender:int,receiver:int,amount:long,externalTransactionId:string
+ * </pre>
+ * Versions are never edited once published; a new version lists the full field set again.
+ * Writers always use the latest version, readers decode any version they know.
+ */
+public final class EventSchemaRegistry {
+
+    public static final String LOCATION_CONFIG = "event.schema.registry";
+
+    private static final String CLASSPATH_PREFIX = "classpath:";
+    private static final String DEFAULT_LOCATION = CLASSPATH_PREFIX + "schemas/event-schemas.properties";
+
+    public enum FieldType { INT, LONG, STRING }
+
+    public record Field(String name, FieldType type) {
+    }
+
+    public record Schema(String eventName, int id, int version, List<Field> fields) {
+    }
+
+    private final Map<String, Schema> latestByName = new HashMap<>();
+    private final Map<Integer, Schema> byIdAndVersion = new HashMap<>();
+
+    private EventSchemaRegistry(Properties properties) {
+        for (String key : properties.stringPropertyNames()) {
+            int dot = key.lastIndexOf('.');
+            String suffix = key.substring(dot + 1);
+            if (dot < 0 || suffix.length() < 2 || suffix.charAt(0) != 'v') {
+                continue;
+            }
+            String eventName = key.substring(0, dot);
+            int id = Integer.parseInt(properties.getProperty(eventName + ".id").trim());
+            int version = Integer.parseInt(suffix.substring(1));
+
+            List<Field> fields = new ArrayList<>();
+            for (String field : properties.getProperty(key).split(",")) {
+                String[] parts = field.trim().split(":");
+                fields.add(new Field(parts[0], FieldType.valueOf(parts[1].toUpperCase())));
+            }
+            Schema schema = new Schema(eventName, id, version, List.copyOf(fields));
+            byIdAndVersion.put(key(id, version), schema);
+            latestByName.merge(eventName, schema, (a, b) -> a.version() >= b.version() ? a : b);
+        }
+    }
+
+    public static EventSchemaRegistry defaultRegistry() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    /**
+     * Loads schemas from {@code classpath:<resource>} or a file path.
+     */
+    public static EventSchemaRegistry load(String location) {
+        Properties properties = new Properties();
+        try (InputStream in = location.startsWith(CLASSPATH_PREFIX)
+                ? EventSchemaRegistry.class.getClassLoader().getResourceAsStream(location.substring(CLASSPATH_PREFIX.length()))
+                : Files.newInputStream(Path.of(location))) {
+            if (in == null) {
+                throw new IllegalStateException("Event schema registry not found at " + location);
+            }
+            properties.load(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read event schema registry at " + location, e);
+        }
+        return new EventSchemaRegistry(properties);
+    }
+
+    static EventSchemaRegistry fromConfigs(Map<String, ?> configs) {
+        Object location = configs.get(LOCATION_CONFIG);
+        return location == null || location.toString().isBlank() ? defaultRegistry() : load(location.toString());
+    }
+
+    public Schema latest(Class<?> eventType) {
+        Schema schema = latestByName.get(eventType.getSimpleName());
+        if (schema == null) {
+            throw new SerializationException("No schema registered for " + eventType.getSimpleName());
+        }
+        return schema;
+    }
+
+    public Schema schema(int id, int version) {
+        Schema schema = byIdAndVersion.get(key(id, version));
+        if (schema == null) {
+            throw new SerializationException("Unknown event schema id=" + id + " version=" + version);
+        }
+        return schema;
+    }
+
+    private static int key(int id, int version) {
+        return id << 8 | version;
+    }
+
+    private static final class DefaultHolder {
+        static final EventSchemaRegistry INSTANCE = load(DEFAULT_LOCATION);
+    }
+}
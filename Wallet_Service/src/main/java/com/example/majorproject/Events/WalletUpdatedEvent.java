@@ -0,0 +1,20 @@
+package com.example.majorproject.Events;
+
+/**
+ * Outcome of a transfer, published on wallet-updated and forwarded on notification-status.
+ * {@code status} is "success" or "failed"; {@code reason} is only set on failure and the wallet ids only on success.
+ */
+public record WalletUpdatedEvent(Integer sender, Integer receiver, Long amount, String externalTransactionId,
+                                 String status, String reason, Integer senderWalletId, Integer receiverWalletId) {
+
+    public static WalletUpdatedEvent success(Integer sender, Integer receiver, Long amount, String externalTransactionId,
+                                             Integer senderWalletId, Integer receiverWalletId) {
+        return new WalletUpdatedEvent(sender, receiver, amount, externalTransactionId, "success", null,
+                senderWalletId, receiverWalletId);
+    }
+
+    public static WalletUpdatedEvent failed(Integer sender, Integer receiver, Long amount, String externalTransactionId,
+                                            String reason) {
+        return new WalletUpdatedEvent(sender, receiver, amount, externalTransactionId, "failed", reason, null, null);
+    }
+}
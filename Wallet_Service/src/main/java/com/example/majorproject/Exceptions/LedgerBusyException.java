@@ -0,0 +1,12 @@
+package com.example.majorproject.Exceptions;
+
+
+/**
+ * Thrown when the ledger already holds {@code wallet.ledger.max-in-flight} unpersisted transfers.
+ * The ledger listener's error handler backs off and redelivers the record instead of skipping it.
+ */
+public class LedgerBusyException extends RuntimeException {
+    public LedgerBusyException(String message) {
+        super(message);
+    }
+}
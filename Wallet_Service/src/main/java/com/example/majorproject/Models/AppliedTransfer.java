@@ -0,0 +1,24 @@
+package com.example.majorproject.Models;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.util.Date;
+
+/**
+ * A transaction-created event whose transfer the ledger has committed, recorded in the same DB transaction
+ * as the balance change, so a redelivered event is recognised and not applied twice.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class AppliedTransfer {
+    @Id
+    private String externalTransactionId;
+
+    @Column(nullable = false)
+    private Date appliedAt;
+}
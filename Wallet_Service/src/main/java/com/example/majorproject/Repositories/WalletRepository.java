@@ -1,23 +1,54 @@
 package com.example.majorproject.Repositories;
 
 import com.example.majorproject.Models.Wallet;
+import jakarta.persistence.LockModeType;
 import jakarta.transaction.Transactional;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+
 @Repository
 public interface WalletRepository extends JpaRepository<Wallet,Long> {
     Wallet findByUserId(Integer userId);
 
+    List<Wallet> findByUserIdIn(Collection<Integer> userIds);
+
+    // Locked in userId order so concurrent batches cannot deadlock each other
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select w from Wallet w where w.userId in :userIds order by w.userId")
+    List<Wallet> lockByUserIdIn(@Param("userIds") Collection<Integer> userIds);
+
     @Transactional
     @Modifying
     @Query("update Wallet w set w.balance = w.balance + :amount where w.id = :id")
     void updateWallet(@Param("id") Integer id, @Param("amount") Long amount);
 
+    /**
+     * Debits the sender and credits the receiver in a single statement.
+     * The debit only happens when the sender can cover it, so 0 rows updated means the transfer was rejected.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "update wallet s join wallet r on r.user_id = :receiver " +
+            "set s.balance = s.balance - :amount, r.balance = r.balance + :amount " +
+            "where s.user_id = :sender and s.user_id <> r.user_id and s.balance >= :amount", nativeQuery = true)
+    int transfer(@Param("sender") Integer sender, @Param("receiver") Integer receiver, @Param("amount") Long amount);
+
     @Query("SELECT w.balance FROM Wallet w WHERE w.userId = :userId")
     Long getBalanceByUserId(@Param("userId") Integer userId);
 
+    // Keyset page: the next wallets after afterId, up to lastId, in id order (no OFFSET scan)
+    @Query("select w from Wallet w where w.id > :afterId and w.id <= :lastId order by w.id")
+    List<Wallet> findPage(@Param("afterId") Integer afterId, @Param("lastId") Integer lastId, Pageable page);
+
+    @Query("select coalesce(max(w.id), 0) from Wallet w")
+    Integer findMaxId();
+
 }
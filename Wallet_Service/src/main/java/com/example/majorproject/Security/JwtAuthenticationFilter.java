@@ -1,5 +1,6 @@
 package com.example.majorproject.Security;
 
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -38,8 +39,10 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         }
 
         jwt = authHeader.substring(7);
-        userEmail = jwtService.extractUsername(jwt);
-        Integer userId=jwtService.extractUserId(jwt);
+        // One verification per request; repeat requests with the same token hit the cache
+        Claims claims = jwtService.verify(jwt);
+        userEmail = claims.getSubject();
+        Integer userId = claims.get("userId", Integer.class);
 
         if (userEmail != null && SecurityContextHolder.getContext().getAuthentication() == null) {
             Map<String, Object> principal = new HashMap<>();
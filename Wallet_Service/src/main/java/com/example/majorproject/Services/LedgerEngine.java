@@ -0,0 +1,489 @@
+package com.example.majorproject.Services;
+
+import com.example.majorproject.Exceptions.LedgerBusyException;
+import com.example.majorproject.Models.CurrencyType;
+import com.example.majorproject.Models.Wallet;
+import com.example.majorproject.Repositories.WalletRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * In-process ledger for wallet transfers.
+ * <p>
+ * Wallets are partitioned by userId across single-threaded shards. Each shard owns the
+ * authoritative in-memory balance of its wallets, so a debit is checked and applied without
+ * any row lock. The credit is handed to the receiver's shard, which journals the transfer and
+ * persists journalled transfers in batches (one JDBC batch per flush, netted per wallet, in a
+ * single DB transaction). A transfer completes only after its batch has been committed.
+ * <p>
+ * In-memory balances are only a pre-check. Every netted debit in a flush is guarded by
+ * {@code balance + delta >= 0} in MySQL; if any guard fails (another writer moved a balance), the batch
+ * is rolled back and replayed one guarded transfer at a time, and the wallets involved are re-read.
+ * A transfer rejected for insufficient balance re-reads the sender from MySQL first (at most once per
+ * {@code wallet.ledger.verify-interval-ms}), so credits made by other writers are picked up.
+ * <p>
+ * Records are acknowledged only after their batch is committed, so a crash or rebalance in between
+ * redelivers transfers that were already applied. Each flush therefore records the transfers' external
+ * transaction ids in {@code applied_transfer} in the same DB transaction, and skips (reporting success)
+ * any id already there.
+ * Run it on a single Wallet_Service instance all the same: two ledgers would keep rejecting each other's batches.
+ */
+@Service
+@ConditionalOnProperty(name = "wallet.ledger.enabled", havingValue = "true")
+public class LedgerEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(LedgerEngine.class);
+
+    private static final String APPLY_DELTA_SQL = "update wallet set balance = balance + ? where id = ? and balance + ? >= 0";
+    private static final String RECORD_APPLIED_SQL =
+            "insert ignore into applied_transfer (external_transaction_id, applied_at) values (?, now())";
+
+    @Value("${wallet.ledger.shards:0}")
+    private int shardCount;
+
+    @Value("${wallet.ledger.batch-size:500}")
+    private int batchSize;
+
+    @Value("${wallet.ledger.flush-interval-ms:5}")
+    private long flushIntervalMs;
+
+    @Value("${wallet.ledger.max-in-flight:10000}")
+    private int maxInFlight;
+
+    @Value("${wallet.ledger.acquire-timeout-ms:1000}")
+    private long acquireTimeoutMs;
+
+    @Value("${wallet.ledger.verify-interval-ms:1000}")
+    private long verifyIntervalMs;
+
+    private final WalletRepository walletRepository;
+    private final WalletCacheService walletCacheService;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    private Shard[] shards;
+    private Semaphore inFlight;
+    private volatile boolean stopped;
+
+    public LedgerEngine(WalletRepository walletRepository,
+                        WalletCacheService walletCacheService,
+                        JdbcTemplate jdbcTemplate,
+                        PlatformTransactionManager transactionManager) {
+        this.walletRepository = walletRepository;
+        this.walletCacheService = walletCacheService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    public record TransferResult(boolean success, String reason, Integer senderWalletId, Integer receiverWalletId) {
+
+        static TransferResult failed(String reason) {
+            return new TransferResult(false, reason, null, null);
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        int count = shardCount > 0 ? shardCount : Runtime.getRuntime().availableProcessors();
+        shards = new Shard[count];
+        for (int i = 0; i < count; i++) {
+            shards[i] = new Shard(i);
+        }
+        inFlight = new Semaphore(maxInFlight);
+        logger.info("Ledger engine started with {} shards, batchSize={}, flushInterval={}ms", count, batchSize, flushIntervalMs);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (stopped) {
+            return;
+        }
+        stopped = true;
+        // Flush every shard before shutting any down, since a flush hands work to other shards
+        List<Future<?>> flushes = new ArrayList<>();
+        for (Shard shard : shards) {
+            flushes.add(shard.executor.submit(shard::flush));
+        }
+        for (Future<?> flush : flushes) {
+            try {
+                flush.get(10, TimeUnit.SECONDS);
+            } catch (ExecutionException | TimeoutException e) {
+                logger.warn("Ledger shard did not flush cleanly on shutdown", e);
+            }
+        }
+        for (Shard shard : shards) {
+            shard.executor.shutdown();
+        }
+        for (Shard shard : shards) {
+            shard.executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        logger.info("Ledger engine stopped");
+    }
+
+    /**
+     * Moves {@code amount} from the sender's wallet to the receiver's wallet; the future completes once the
+     * transfer is persisted (or rejected). When {@code wallet.ledger.max-in-flight} transfers are pending, waits
+     * up to {@code wallet.ledger.acquire-timeout-ms} and then throws {@link LedgerBusyException}, as it does
+     * once the ledger is stopping.
+     */
+    public CompletableFuture<TransferResult> transfer(Integer sender, Integer receiver, Long amount,
+                                                      String externalTransactionId) {
+        if (stopped) {
+            throw new LedgerBusyException("Ledger is stopped");
+        }
+        try {
+            if (!inFlight.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new LedgerBusyException("Ledger has " + maxInFlight + " transfers in flight");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LedgerBusyException("Interrupted while waiting for the ledger");
+        }
+        CompletableFuture<TransferResult> result = new CompletableFuture<>();
+        result.whenComplete((r, ex) -> inFlight.release());
+
+        Posting posting = new Posting(sender, receiver, amount, externalTransactionId, result);
+        try {
+            shardFor(sender).executor.execute(() -> shardFor(sender).debit(posting));
+        } catch (RejectedExecutionException e) {
+            // Stopped after the check above: completing the future gives the permit back
+            result.completeExceptionally(new LedgerBusyException("Ledger is stopped"));
+        }
+        return result;
+    }
+
+    private Shard shardFor(Integer userId) {
+        return shards[Math.floorMod(userId, shards.length)];
+    }
+
+    private static final class Account {
+        final Integer walletId;
+        final Integer userId;
+        final CurrencyType currency;
+        long balance;
+        // Debits and credits applied here but not yet committed to MySQL: balance = DB + pendingCredit - pendingDebit
+        long pendingDebit;
+        long pendingCredit;
+        long verifiedAt;
+
+        Account(Wallet wallet) {
+            this.walletId = wallet.getId();
+            this.userId = wallet.getUserId();
+            this.currency = wallet.getCurrency();
+            this.balance = wallet.getBalance();
+            this.verifiedAt = System.currentTimeMillis();
+        }
+
+        Wallet toWallet() {
+            return Wallet.builder().id(walletId).userId(userId).balance(balance).currency(currency).build();
+        }
+    }
+
+    private static final class Posting {
+        final Integer sender;
+        final Integer receiver;
+        final long amount;
+        final String externalTransactionId;
+        final CompletableFuture<TransferResult> result;
+        Integer senderWalletId;
+        Integer receiverWalletId;
+        // Already applied by an earlier delivery of the same event
+        boolean duplicate;
+
+        Posting(Integer sender, Integer receiver, long amount, String externalTransactionId,
+                CompletableFuture<TransferResult> result) {
+            this.sender = sender;
+            this.receiver = receiver;
+            this.amount = amount;
+            this.externalTransactionId = externalTransactionId;
+            this.result = result;
+        }
+    }
+
+    /**
+     * A single writer thread together with the state it owns. Every field is only touched from
+     * {@link #executor}, so no locking is needed.
+     */
+    private final class Shard {
+        final ScheduledExecutorService executor;
+        final Map<Integer, Account> accounts = new HashMap<>();
+        final List<Posting> journal = new ArrayList<>();
+        boolean flushScheduled;
+
+        Shard(int index) {
+            this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "ledger-shard-" + index);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        Account account(Integer userId) {
+            Account account = accounts.get(userId);
+            if (account == null) {
+                Wallet wallet = walletRepository.findByUserId(userId);
+                if (wallet == null || wallet.getBalance() == null) {
+                    return null;
+                }
+                account = new Account(wallet);
+                accounts.put(userId, account);
+            }
+            return account;
+        }
+
+        // Re-reads the committed balance and reapplies what this ledger has not committed yet
+        void verify(Account account) {
+            Wallet wallet = walletRepository.findByUserId(account.userId);
+            if (wallet == null || wallet.getBalance() == null) {
+                return;
+            }
+            long verified = wallet.getBalance() + account.pendingCredit - account.pendingDebit;
+            if (verified != account.balance) {
+                logger.warn("Ledger balance of userId={} was {}, MySQL says {}", account.userId, account.balance, verified);
+                account.balance = verified;
+            }
+            account.verifiedAt = System.currentTimeMillis();
+        }
+
+        void debit(Posting posting) {
+            try {
+                Account sender = account(posting.sender);
+                if (sender == null) {
+                    posting.result.complete(TransferResult.failed("Sender wallet not found"));
+                    return;
+                }
+                if (sender.balance < posting.amount && System.currentTimeMillis() - sender.verifiedAt >= verifyIntervalMs) {
+                    verify(sender);
+                }
+                if (sender.balance < posting.amount) {
+                    posting.result.complete(TransferResult.failed("Insufficient balance"));
+                    return;
+                }
+                sender.balance -= posting.amount;
+                sender.pendingDebit += posting.amount;
+                posting.senderWalletId = sender.walletId;
+            } catch (RuntimeException e) {
+                posting.result.completeExceptionally(e);
+                return;
+            }
+            Shard receiverShard = shardFor(posting.receiver);
+            receiverShard.executor.execute(() -> receiverShard.credit(posting));
+        }
+
+        void credit(Posting posting) {
+            Account receiver;
+            try {
+                receiver = account(posting.receiver);
+            } catch (RuntimeException e) {
+                refund(posting);
+                posting.result.completeExceptionally(e);
+                return;
+            }
+            if (receiver == null) {
+                refund(posting);
+                posting.result.complete(TransferResult.failed("Receiver wallet not found"));
+                return;
+            }
+            receiver.balance += posting.amount;
+            receiver.pendingCredit += posting.amount;
+            posting.receiverWalletId = receiver.walletId;
+            journal.add(posting);
+
+            if (journal.size() >= batchSize) {
+                flush();
+            } else if (!flushScheduled) {
+                flushScheduled = true;
+                executor.schedule(this::flush, flushIntervalMs, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        void flush() {
+            flushScheduled = false;
+            if (journal.isEmpty()) {
+                return;
+            }
+            List<Posting> batch = new ArrayList<>(journal);
+            journal.clear();
+
+            boolean guarded;
+            try {
+                guarded = Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+                    List<Object[]> args = deltaArgs(recordApplied(batch));
+                    if (args.isEmpty()) {
+                        return true;
+                    }
+                    for (int updated : jdbcTemplate.batchUpdate(APPLY_DELTA_SQL, args)) {
+                        if (updated == 0) {
+                            // A wallet holds less than this ledger thought: undo the whole batch
+                            status.setRollbackOnly();
+                            return false;
+                        }
+                    }
+                    return true;
+                }));
+            } catch (RuntimeException e) {
+                logger.error("Ledger flush of {} transfers failed on {}", batch.size(), Thread.currentThread().getName(), e);
+                batch.forEach(posting -> settle(posting, TransferResult.failed("Ledger persistence failed")));
+                return;
+            }
+
+            if (guarded) {
+                batch.forEach(posting -> settle(posting,
+                        new TransferResult(true, null, posting.senderWalletId, posting.receiverWalletId)));
+            } else {
+                // The rollback also undid the recorded ids; replay records them again one by one
+                batch.forEach(posting -> posting.duplicate = false);
+                logger.warn("Ledger balances diverged from MySQL, replaying {} transfers one by one", batch.size());
+                for (Posting posting : batch) {
+                    settle(posting, replay(posting));
+                }
+                for (Posting posting : batch) {
+                    Shard senderShard = shardFor(posting.sender);
+                    senderShard.executor.execute(() -> senderShard.verify(senderShard.accounts.get(posting.sender)));
+                    verify(accounts.get(posting.receiver));
+                }
+            }
+
+            Set<Integer> receivers = new LinkedHashSet<>();
+            Set<Integer> senders = new LinkedHashSet<>();
+            for (Posting posting : batch) {
+                receivers.add(posting.receiver);
+                senders.add(posting.sender);
+            }
+            receivers.forEach(this::publishBalance);
+            for (Integer sender : senders) {
+                Shard senderShard = shardFor(sender);
+                senderShard.executor.execute(() -> senderShard.publishBalance(sender));
+            }
+            logger.debug("Ledger flushed {} transfers", batch.size());
+        }
+
+        // Records the batch's transaction ids and returns the postings not applied by an earlier delivery
+        List<Posting> recordApplied(List<Posting> batch) {
+            List<Posting> identified = new ArrayList<>(batch.size());
+            List<Posting> fresh = new ArrayList<>(batch.size());
+            for (Posting posting : batch) {
+                (posting.externalTransactionId != null ? identified : fresh).add(posting);
+            }
+            if (!identified.isEmpty()) {
+                int[] recorded = jdbcTemplate.batchUpdate(RECORD_APPLIED_SQL, identified.stream()
+                        .map(posting -> new Object[]{posting.externalTransactionId})
+                        .toList());
+                for (int i = 0; i < identified.size(); i++) {
+                    Posting posting = identified.get(i);
+                    posting.duplicate = recorded[i] == 0;
+                    if (posting.duplicate) {
+                        logger.info("Skipping transfer txnId={}, already applied", posting.externalTransactionId);
+                    } else {
+                        fresh.add(posting);
+                    }
+                }
+            }
+            return fresh;
+        }
+
+        // Netted balance changes of the postings, one guarded update per wallet
+        List<Object[]> deltaArgs(List<Posting> postings) {
+            Map<Integer, Long> deltas = new LinkedHashMap<>();
+            for (Posting posting : postings) {
+                deltas.merge(posting.senderWalletId, -posting.amount, Long::sum);
+                deltas.merge(posting.receiverWalletId, posting.amount, Long::sum);
+            }
+            List<Object[]> args = new ArrayList<>(deltas.size());
+            deltas.forEach((walletId, delta) -> {
+                if (delta != 0) {
+                    args.add(new Object[]{delta, walletId, delta});
+                }
+            });
+            return args;
+        }
+
+        // One guarded transfer straight against MySQL, recorded as applied in the same DB transaction
+        TransferResult replay(Posting posting) {
+            try {
+                boolean moved = Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+                    if (recordApplied(List.of(posting)).isEmpty()) {
+                        return true;
+                    }
+                    if (posting.sender.equals(posting.receiver)
+                            || walletRepository.transfer(posting.sender, posting.receiver, posting.amount) > 0) {
+                        return true;
+                    }
+                    status.setRollbackOnly();
+                    return false;
+                }));
+                if (moved) {
+                    return new TransferResult(true, null, posting.senderWalletId, posting.receiverWalletId);
+                }
+                return TransferResult.failed("Insufficient balance");
+            } catch (RuntimeException e) {
+                logger.error("Ledger replay of a transfer from {} failed", posting.sender, e);
+                return TransferResult.failed("Ledger persistence failed");
+            }
+        }
+
+        // Clears the posting from the pending amounts (and undoes it when it failed or was a duplicate),
+        // then completes it
+        void settle(Posting posting, TransferResult result) {
+            boolean undo = !result.success() || posting.duplicate;
+            Account receiver = accounts.get(posting.receiver);
+            receiver.pendingCredit -= posting.amount;
+            if (undo) {
+                receiver.balance -= posting.amount;
+            }
+            Shard senderShard = shardFor(posting.sender);
+            senderShard.executor.execute(() -> {
+                Account sender = senderShard.accounts.get(posting.sender);
+                sender.pendingDebit -= posting.amount;
+                if (undo) {
+                    sender.balance += posting.amount;
+                }
+            });
+            posting.result.complete(result);
+        }
+
+        void refund(Posting posting) {
+            Shard senderShard = shardFor(posting.sender);
+            senderShard.executor.execute(() -> {
+                Account sender = senderShard.accounts.get(posting.sender);
+                sender.balance += posting.amount;
+                sender.pendingDebit -= posting.amount;
+            });
+        }
+
+        // Only the owning shard writes a wallet to Redis, so the last write always carries the latest balance
+        void publishBalance(Integer userId) {
+            Account account = accounts.get(userId);
+            try {
+                walletCacheService.saveWallet(account.toWallet());
+            } catch (RuntimeException e) {
+                logger.warn("Failed to refresh WALLET:{} in Redis", userId, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package com.example.majorproject.Services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * In-process L1 over Redis for wallets, keyed by userId; WalletCacheService publishes the ids it changes
+ * on {@code near-cache:wallets} so every instance drops them.
+ * Loads, invalidation and early refresh are described in the README (Near cache); keep its code identical
+ * to its copies in the other services.
+ * <p>
+ * Metrics, tagged with the cache name: {@code cache.gets}, {@code near.cache.l2}, {@code near.cache.db},
+ * {@code near.cache.negative.hits} and {@code near.cache.early.refreshes}. With DEBUG enabled for this class,
+ * a sample of L1 misses is logged with where the value came from.
+ */
+public class NearCache<V> {
+
+    private static final Logger logger = LoggerFactory.getLogger(NearCache.class);
+
+    // XFetch beta: > 1 refreshes earlier, < 1 later
+    private static final double EARLY_REFRESH_BETA = 1.0;
+
+    // With DEBUG enabled for this class, one L1 miss in this many is logged
+    private static final int DEBUG_LOG_SAMPLE = 100;
+
+    private static final int REFRESH_THREADS = 2;
+    private static final int REFRESH_QUEUE = 1000;
+
+    private record Entry<V>(V value, long loadNanos) {
+    }
+
+    private final String channel;
+    private final long ttlNanos;
+    private final Cache<Integer, Entry<V>> local;
+    private final Cache<Integer, Boolean> missing;
+    private final ThreadPoolExecutor refreshExecutor;
+    private final ConcurrentHashMap<Integer, CompletableFuture<Entry<V>>> loading = new ConcurrentHashMap<>();
+    private final RedisTemplate<String, ?> redisTemplate;
+    private final Timer l2Hits;
+    private final Timer l2Misses;
+    private final Timer dbLoads;
+    private final Counter negativeHits;
+    private final Counter earlyRefreshes;
+
+    public NearCache(String name, long maximumSize, Duration ttl, Duration negativeTtl,
+                     RedisTemplate<String, ?> redisTemplate,
+                     RedisMessageListenerContainer listenerContainer,
+                     MeterRegistry meterRegistry) {
+        this.channel = "near-cache:" + name;
+        this.ttlNanos = ttl.toNanos();
+        this.local = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        this.missing = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(negativeTtl)
+                .build();
+        this.redisTemplate = redisTemplate;
+        // Refreshes block on Redis/DB I/O, so they get their own threads instead of the common pool
+        AtomicInteger refreshThreads = new AtomicInteger();
+        this.refreshExecutor = new ThreadPoolExecutor(REFRESH_THREADS, REFRESH_THREADS, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(REFRESH_QUEUE), runnable -> {
+                    Thread thread = new Thread(runnable, "near-cache-" + name + "-refresh-" + refreshThreads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        this.refreshExecutor.allowCoreThreadTimeOut(true);
+
+        CaffeineCacheMetrics.monitor(meterRegistry, local, name);
+        this.l2Hits = Timer.builder("near.cache.l2").tag("cache", name).tag("result", "hit").register(meterRegistry);
+        this.l2Misses = Timer.builder("near.cache.l2").tag("cache", name).tag("result", "miss").register(meterRegistry);
+        this.dbLoads = Timer.builder("near.cache.db").tag("cache", name).register(meterRegistry);
+        this.negativeHits = Counter.builder("near.cache.negative.hits").tag("cache", name).register(meterRegistry);
+        this.earlyRefreshes = Counter.builder("near.cache.early.refreshes").tag("cache", name).register(meterRegistry);
+
+        listenerContainer.addMessageListener((message, pattern) -> onInvalidation(message.getBody()), new ChannelTopic(channel));
+    }
+
+    public String channel() {
+        return channel;
+    }
+
+    // L1 first, then Redis; returns null when Redis has no entry either
+    public V get(Integer id, Function<Integer, V> redisLoader) {
+        return get(id, redisLoader, key -> null);
+    }
+
+    /**
+     * L1 first, then Redis, then {@code dbLoader} (which is responsible for filling Redis).
+     * Returns null, and remembers the id as missing, when none of them has it.
+     * Early refreshes run the same loaders in the background, so {@code dbLoader} must only fill Redis
+     * if the entry is still absent: a write made after its database read must not be overwritten.
+     */
+    public V get(Integer id, Function<Integer, V> redisLoader, Function<Integer, V> dbLoader) {
+        if (missing.getIfPresent(id) != null) {
+            negativeHits.increment();
+            return null;
+        }
+        Entry<V> entry = local.getIfPresent(id);
+        if (entry == null) {
+            entry = loadOnce(id, redisLoader, dbLoader);
+        }
+        if (entry == null) {
+            missing.put(id, Boolean.TRUE);
+            return null;
+        }
+        if (shouldRefreshEarly(id, entry)) {
+            refreshAsync(id, redisLoader, dbLoader);
+        }
+        return entry.value();
+    }
+
+    // ✅ Single flight: the first caller loads, concurrent callers for the same id wait for its result.
+    // Not Caffeine's get(key, loader), which would hold a map lock (and pin a virtual thread) during I/O
+    private Entry<V> loadOnce(Integer id, Function<Integer, V> redisLoader, Function<Integer, V> dbLoader) {
+        CompletableFuture<Entry<V>> mine = new CompletableFuture<>();
+        CompletableFuture<Entry<V>> inFlight = loading.putIfAbsent(id, mine);
+        if (inFlight != null) {
+            try {
+                return inFlight.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+        try {
+            Entry<V> entry = load(id, redisLoader, dbLoader);
+            // An invalidation during the load removed our marker: the value may be stale, so do not keep it
+            if (loading.remove(id, mine) && entry != null) {
+                local.put(id, entry);
+            }
+            mine.complete(entry);
+            return entry;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(id, mine);
+        }
+    }
+
+    /**
+     * Non-blocking {@link #get(Integer, Function, Function)}: an L1 hit completes at once, a miss subscribes
+     * to {@code redisLoader} and then {@code dbLoader}, and completes empty when neither has the id.
+     * Loads are shared with blocking callers of the same id. Entries it loads are not refreshed early.
+     */
+    public Mono<V> getReactive(Integer id, Function<Integer, Mono<V>> redisLoader, Function<Integer, Mono<V>> dbLoader) {
+        if (missing.getIfPresent(id) != null) {
+            negativeHits.increment();
+            return Mono.empty();
+        }
+        Entry<V> entry = local.getIfPresent(id);
+        if (entry != null) {
+            return Mono.just(entry.value());
+        }
+        return Mono.defer(() -> {
+            CompletableFuture<Entry<V>> mine = new CompletableFuture<>();
+            CompletableFuture<Entry<V>> inFlight = loading.putIfAbsent(id, mine);
+            if (inFlight == null) {
+                loadReactive(id, redisLoader, dbLoader).subscribe(
+                        loaded -> {
+                            if (loading.remove(id, mine)) {
+                                local.put(id, loaded);
+                            }
+                            mine.complete(loaded);
+                        },
+                        error -> {
+                            loading.remove(id, mine);
+                            mine.completeExceptionally(error);
+                        },
+                        () -> {
+                            loading.remove(id, mine);
+                            mine.complete(null);
+                        });
+                inFlight = mine;
+            }
+            return Mono.fromFuture(inFlight, true);
+        }).map(Entry::value).switchIfEmpty(Mono.fromRunnable(() -> missing.put(id, Boolean.TRUE)));
+    }
+
+    private Mono<Entry<V>> loadReactive(Integer id, Function<Integer, Mono<V>> redisLoader,
+                                        Function<Integer, Mono<V>> dbLoader) {
+        long start = System.nanoTime();
+        return redisLoader.apply(id)
+                .doOnNext(value -> l2Hits.record(System.nanoTime() - start, TimeUnit.NANOSECONDS))
+                .switchIfEmpty(Mono.defer(() -> {
+                    l2Misses.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    long dbStart = System.nanoTime();
+                    return dbLoader.apply(id)
+                            .doFinally(signal -> dbLoads.record(System.nanoTime() - dbStart, TimeUnit.NANOSECONDS));
+                }))
+                .map(value -> new Entry<>(value, System.nanoTime() - start));
+    }
+
+    private Entry<V> load(Integer id, Function<Integer, V> redisLoader, Function<Integer, V> dbLoader) {
+        long start = System.nanoTime();
+        V value = redisLoader.apply(id);
+        boolean redisHit = value != null;
+        (redisHit ? l2Hits : l2Misses).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        if (!redisHit) {
+            long dbStart = System.nanoTime();
+            value = dbLoader.apply(id);
+            dbLoads.record(System.nanoTime() - dbStart, TimeUnit.NANOSECONDS);
+        }
+        long loadNanos = System.nanoTime() - start;
+        if (logger.isDebugEnabled() && ThreadLocalRandom.current().nextInt(DEBUG_LOG_SAMPLE) == 0) {
+            logger.debug("{} L1 miss for {}: {} in {} µs (sampled 1/{})", channel, id,
+                    redisHit ? "redis hit" : value != null ? "loaded from db" : "not found",
+                    TimeUnit.NANOSECONDS.toMicros(loadNanos), DEBUG_LOG_SAMPLE);
+        }
+        return value == null ? null : new Entry<>(value, loadNanos);
+    }
+
+    // XFetch: refresh when now - loadTime * beta * ln(rand) passes the expiry, i.e. more likely the
+    // closer the entry is to expiring and the longer it took to load
+    private boolean shouldRefreshEarly(Integer id, Entry<V> entry) {
+        long age = local.policy().expireAfterWrite()
+                .map(policy -> policy.ageOf(id, TimeUnit.NANOSECONDS).orElse(0L))
+                .orElse(0L);
+        double gap = -entry.loadNanos() * EARLY_REFRESH_BETA * Math.log(ThreadLocalRandom.current().nextDouble());
+        return age + gap >= ttlNanos;
+    }
+
+    // Takes the single-flight marker like loadOnce, so readers that miss meanwhile wait for this refresh
+    // and an invalidation during it removes the marker and keeps the refreshed (possibly stale) value out
+    private void refreshAsync(Integer id, Function<Integer, V> redisLoader, Function<Integer, V> dbLoader) {
+        CompletableFuture<Entry<V>> mine = new CompletableFuture<>();
+        if (loading.putIfAbsent(id, mine) != null) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    Entry<V> entry = load(id, redisLoader, dbLoader);
+                    if (loading.remove(id, mine)) {
+                        if (entry != null) {
+                            local.put(id, entry);
+                        } else {
+                            local.invalidate(id);
+                        }
+                    }
+                    mine.complete(entry);
+                } catch (RuntimeException e) {
+                    loading.remove(id, mine);
+                    mine.completeExceptionally(e);
+                    logger.warn("Early refresh of {} in {} failed", id, channel, e);
+                }
+            });
+            earlyRefreshes.increment();
+        } catch (RejectedExecutionException e) {
+            // Pool saturated: skip this refresh, the entry is reloaded on demand when it expires
+            loading.remove(id, mine);
+            mine.complete(local.getIfPresent(id));
+        }
+    }
+
+    // Times a database load made outside get(), e.g. a lookup by another key
+    public V loadFromDb(Supplier<V> loader) {
+        return dbLoads.record(loader);
+    }
+
+    public void put(Integer id, V value) {
+        local.put(id, new Entry<>(value, 0));
+        missing.invalidate(id);
+    }
+
+    public void invalidateLocal(Collection<Integer> ids) {
+        ids.forEach(loading::remove);
+        local.invalidateAll(ids);
+        missing.invalidateAll(ids);
+    }
+
+    // ✅ Drops the ids here and tells every other instance to do the same
+    public void invalidate(Collection<Integer> ids) {
+        invalidateLocal(ids);
+        byte[] channelBytes = channel.getBytes(StandardCharsets.UTF_8);
+        byte[] message = invalidationMessage(ids).getBytes(StandardCharsets.UTF_8);
+        redisTemplate.execute((RedisCallback<Long>) connection -> connection.publish(channelBytes, message));
+    }
+
+    // Message body for ids published from outside this class (e.g. by a Lua script)
+    public String invalidationMessage(Collection<Integer> ids) {
+        return ids.stream().map(String::valueOf).collect(Collectors.joining(","));
+    }
+
+    private void onInvalidation(byte[] body) {
+        String message = new String(body, StandardCharsets.UTF_8);
+        for (String id : message.split(",")) {
+            try {
+                Integer userId = Integer.valueOf(id.trim());
+                loading.remove(userId);
+                local.invalidate(userId);
+                missing.invalidate(userId);
+            } catch (NumberFormatException e) {
+                logger.warn("Ignoring malformed invalidation on {}: {}", channel, message);
+            }
+        }
+    }
+}
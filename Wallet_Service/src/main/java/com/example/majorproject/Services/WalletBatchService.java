@@ -0,0 +1,102 @@
+package com.example.majorproject.Services;
+
+import com.example.majorproject.Events.TransactionCreatedEvent;
+import com.example.majorproject.Models.Wallet;
+import com.example.majorproject.Repositories.WalletRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Applies a whole poll of transfers in one DB transaction.
+ * <p>
+ * All wallets involved are locked once, transfers are replayed in order against their balances so
+ * every transfer keeps its own success/failure outcome, and only the net change per wallet is
+ * written back (Hibernate JDBC batching turns those into one batched update).
+ */
+@Service
+public class WalletBatchService {
+
+    private static final Logger logger = LoggerFactory.getLogger(WalletBatchService.class);
+
+    private final WalletRepository walletRepository;
+    private final WalletCacheService walletCacheService;
+    private final TransactionTemplate transactionTemplate;
+
+    public WalletBatchService(WalletRepository walletRepository,
+                              WalletCacheService walletCacheService,
+                              PlatformTransactionManager transactionManager) {
+        this.walletRepository = walletRepository;
+        this.walletCacheService = walletCacheService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    public record TransferOutcome(TransactionCreatedEvent request, boolean success, String reason,
+                                  Integer senderWalletId, Integer receiverWalletId) {
+
+        static TransferOutcome failed(TransactionCreatedEvent request, String reason) {
+            return new TransferOutcome(request, false, reason, null, null);
+        }
+    }
+
+    public List<TransferOutcome> applyTransfers(List<TransactionCreatedEvent> transfers) {
+        if (transfers.isEmpty()) {
+            return List.of();
+        }
+        Set<Integer> userIds = new LinkedHashSet<>();
+        for (TransactionCreatedEvent transfer : transfers) {
+            userIds.add(transfer.sender());
+            userIds.add(transfer.receiver());
+        }
+
+        List<TransferOutcome> outcomes = new ArrayList<>(transfers.size());
+        Map<Integer, Wallet> touched = new LinkedHashMap<>();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            Map<Integer, Wallet> wallets = new HashMap<>();
+            for (Wallet wallet : walletRepository.lockByUserIdIn(userIds)) {
+                wallets.put(wallet.getUserId(), wallet);
+            }
+
+            // Replay in order against the locked balances; managed entities carry the netted result
+            for (TransactionCreatedEvent transfer : transfers) {
+                Wallet sender = wallets.get(transfer.sender());
+                Wallet receiver = wallets.get(transfer.receiver());
+                if (sender == null || sender.getBalance() == null) {
+                    outcomes.add(TransferOutcome.failed(transfer, "Sender wallet not found"));
+                } else if (receiver == null) {
+                    outcomes.add(TransferOutcome.failed(transfer, "Receiver wallet not found"));
+                } else if (sender.getBalance() < transfer.amount()) {
+                    outcomes.add(TransferOutcome.failed(transfer, "Insufficient balance"));
+                } else {
+                    sender.setBalance(sender.getBalance() - transfer.amount());
+                    receiver.setBalance(receiver.getBalance() + transfer.amount());
+                    touched.put(sender.getUserId(), sender);
+                    touched.put(receiver.getUserId(), receiver);
+                    outcomes.add(new TransferOutcome(transfer, true, null, sender.getId(), receiver.getId()));
+                }
+            }
+        });
+
+        // ✅ Refresh Redis for every wallet that changed in one pipeline
+        if (!touched.isEmpty()) {
+            try {
+                walletCacheService.saveWallets(touched.values());
+            } catch (RuntimeException e) {
+                logger.warn("Failed to refresh {} wallets in Redis after batch", touched.size(), e);
+            }
+        }
+        logger.info("Applied batch of {} transfers touching {} wallets", transfers.size(), touched.size());
+        return outcomes;
+    }
+}
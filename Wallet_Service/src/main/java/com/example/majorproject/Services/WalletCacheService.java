@@ -3,9 +3,28 @@ package com.example.majorproject.Services;
 import com.example.majorproject.Models.CurrencyType;
 import com.example.majorproject.Models.Wallet;
 import com.example.majorproject.Repositories.WalletRepository;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 
 @Service
@@ -14,20 +33,116 @@ public class WalletCacheService {
     @Autowired
     private WalletRepository walletRepository;
 
-    private final RedisTemplate<String, Object> redisTemplate;
+    private final StringRedisTemplate redisTemplate;
+    private final ReactiveStringRedisTemplate reactiveRedisTemplate;
+    private final HashFields.Format hashFormat;
     private static final String WALLET_KEY_PREFIX = "WALLET:";
 
-    public WalletCacheService(RedisTemplate<String, Object> redisTemplate) {
+    private static final RedisScript<String> MOVE_BALANCE_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/move-balance.lua"), String.class);
+    private static final RedisScript<Long> WARM_WALLETS_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/warm-wallets.lua"), Long.class);
+    private static final GenericToStringSerializer<Long> COUNT_SERIALIZER = new GenericToStringSerializer<>(Long.class);
+    private static final StringRedisSerializer STRING_SERIALIZER = new StringRedisSerializer();
+
+    public enum MoveStatus {
+        MOVED, SENDER_MISSING, RECEIVER_MISSING, INSUFFICIENT_BALANCE
+    }
+
+    public record BalanceMove(MoveStatus status, Integer senderWalletId, Integer receiverWalletId) {
+    }
+
+    private final NearCache<Wallet> nearCache;
+
+    public WalletCacheService(StringRedisTemplate redisTemplate,
+                              ReactiveStringRedisTemplate reactiveRedisTemplate,
+                              RedisMessageListenerContainer listenerContainer,
+                              MeterRegistry meterRegistry,
+                              @Value("${wallet.cache.l1.maximum-size:100000}") long l1MaximumSize,
+                              @Value("${wallet.cache.l1.ttl:5s}") Duration l1Ttl,
+                              @Value("${wallet.cache.negative-ttl:10s}") Duration negativeTtl,
+                              @Value("${wallet.cache.hash-format:PLAIN}") HashFields.Format hashFormat) {
         this.redisTemplate = redisTemplate;
+        this.reactiveRedisTemplate = reactiveRedisTemplate;
+        this.hashFormat = hashFormat;
+        this.nearCache = new NearCache<>("wallets", l1MaximumSize, l1Ttl, negativeTtl,
+                redisTemplate, listenerContainer, meterRegistry);
     }
 
-    // ✅ Save wallet as Hash
+    // ✅ Save wallet as Hash (single HSET round trip), then invalidate every instance's L1 copy
     public void saveWallet(Wallet wallet) {
-        String key = WALLET_KEY_PREFIX + wallet.getUserId();
-        redisTemplate.opsForHash().put(key, "id", wallet.getId());
-        redisTemplate.opsForHash().put(key, "userId", wallet.getUserId());
-        redisTemplate.opsForHash().put(key, "balance", wallet.getBalance());
-        redisTemplate.opsForHash().put(key, "currency", wallet.getCurrency().toString());
+        redisTemplate.opsForHash().putAll(WALLET_KEY_PREFIX + wallet.getUserId(), toHash(wallet));
+        nearCache.invalidate(List.of(wallet.getUserId()));
+    }
+
+    // ✅ Delete cached wallets (one DEL) so the next read reloads them from the DB, then invalidate every L1 copy
+    public void evictWallets(Collection<Integer> userIds) {
+        redisTemplate.delete(userIds.stream().map(userId -> WALLET_KEY_PREFIX + userId).toList());
+        nearCache.invalidate(List.copyOf(userIds));
+    }
+
+    // ✅ Save many wallets in one pipelined round trip
+    public void saveWallets(Collection<Wallet> wallets) {
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                for (Wallet wallet : wallets) {
+                    ops.opsForHash().putAll(WALLET_KEY_PREFIX + wallet.getUserId(), toHash(wallet));
+                }
+                return null;
+            }
+        });
+        nearCache.invalidate(wallets.stream().map(Wallet::getUserId).toList());
+    }
+
+    /**
+     * Writes the wallets that are not in Redis yet, in one script call (one round trip) per batch.
+     * Cached wallets are left alone, so this is safe to run while transfers are moving balances.
+     * Returns how many hashes were written.
+     */
+    public long warmWallets(List<Wallet> wallets) {
+        List<String> keys = new ArrayList<>(wallets.size());
+        List<String> args = new ArrayList<>(wallets.size() * 4);
+        for (Wallet wallet : wallets) {
+            keys.add(WALLET_KEY_PREFIX + wallet.getUserId());
+            // Same field order and encoding as toHash, so warmed hashes match what saveWallet writes
+            Map<String, String> hash = toHash(wallet);
+            args.add(hash.get("id"));
+            args.add(hash.get("userId"));
+            args.add(hash.get("balance"));
+            args.add(hash.get("currency"));
+        }
+        Long filled = redisTemplate.execute(WARM_WALLETS_SCRIPT,
+                STRING_SERIALIZER, COUNT_SERIALIZER, keys, args.toArray());
+        return filled == null ? 0 : filled;
+    }
+
+    private Map<String, String> toHash(Wallet wallet) {
+        Map<String, String> walletMap = new HashMap<>();
+        walletMap.put("id", HashFields.encode(wallet.getId(), hashFormat));
+        walletMap.put("userId", HashFields.encode(wallet.getUserId(), hashFormat));
+        walletMap.put("balance", HashFields.encode(wallet.getBalance(), hashFormat));
+        walletMap.put("currency", HashFields.encode(wallet.getCurrency(), hashFormat));
+        return walletMap;
+    }
+
+    // ✅ Check and move balance between two cached wallets atomically (one round trip, no DB fallback)
+    public BalanceMove moveBalance(Integer sender, Integer receiver, Long amount) {
+        List<Integer> moved = List.of(sender, receiver);
+        // The script publishes the L1 invalidation itself, so a transfer costs no extra round trip
+        String result = redisTemplate.execute(MOVE_BALANCE_SCRIPT, STRING_SERIALIZER, STRING_SERIALIZER,
+                List.of(WALLET_KEY_PREFIX + sender, WALLET_KEY_PREFIX + receiver), amount.toString(),
+                nearCache.channel(), nearCache.invalidationMessage(moved));
+
+        String[] parts = result.split(":");
+        MoveStatus status = MoveStatus.valueOf(parts[0]);
+        if (status != MoveStatus.MOVED) {
+            return new BalanceMove(status, null, null);
+        }
+        nearCache.invalidateLocal(moved);
+        return new BalanceMove(status, Integer.valueOf(parts[1]), Integer.valueOf(parts[2]));
     }
 
     // ✅ Get Wallet from cache (no DB fallback)
@@ -37,30 +152,49 @@ public class WalletCacheService {
 
         if (walletMap.isEmpty()) return null;
 
-        Wallet wallet = new Wallet();
-        wallet.setId((Integer) walletMap.get("id"));
-        wallet.setUserId((Integer) walletMap.get("userId"));
-        wallet.setBalance(((Number) walletMap.get("balance")).longValue());
-        wallet.setCurrency(CurrencyType.valueOf((String) walletMap.get("currency")));
-
+        return fromHash(walletMap);
+    }
 
+    private Wallet fromHash(Map<?, ?> walletMap) {
+        Wallet wallet = new Wallet();
+        wallet.setId(HashFields.toInteger(walletMap.get("id")));
+        wallet.setUserId(HashFields.toInteger(walletMap.get("userId")));
+        wallet.setBalance(HashFields.toLong(walletMap.get("balance")));
+        wallet.setCurrency(CurrencyType.valueOf(HashFields.text(walletMap.get("currency"))));
         return wallet;
     }
 
-    // ✅ Get Wallet with DB fallback
+    // ✅ Get Wallet from L1, then Redis, with DB fallback; concurrent misses share one DB load
+    // and unknown userIds are remembered briefly instead of hitting MySQL every time
     public Wallet getWallet(Integer userId) {
-        Wallet wallet = getWalletFromCache(userId);
+        return nearCache.get(userId, this::getWalletFromCache, this::loadWallet);
+    }
 
-        if (wallet != null) {
-            System.out.println("✅ Cache hit for WALLET:" + userId);
-            return wallet;
-        }
+    /**
+     * Non-blocking {@link #getWallet}: L1, then Redis over the reactive Lettuce API, so no thread waits on
+     * the round trip. Only a wallet missing from Redis falls back to the (blocking) repository, on the
+     * bounded elastic scheduler. Completes empty when there is no wallet.
+     */
+    public Mono<Wallet> getWalletReactive(Integer userId) {
+        return nearCache.getReactive(userId, this::getWalletFromCacheReactive,
+                id -> Mono.fromCallable(() -> loadWallet(id)).subscribeOn(Schedulers.boundedElastic()));
+    }
+
+    private Mono<Wallet> getWalletFromCacheReactive(Integer userId) {
+        return reactiveRedisTemplate.<String, String>opsForHash().entries(WALLET_KEY_PREFIX + userId)
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue)
+                .filter(walletMap -> !walletMap.isEmpty())
+                .map(this::fromHash);
+    }
 
-        System.out.println("❌ Cache miss for WALLET:" + userId + ", loading from DB...");
-        wallet = walletRepository.findByUserId(userId);
+    private Wallet loadWallet(Integer userId) {
+        // Counted and timed by the near cache as near.cache.db
+        Wallet wallet = walletRepository.findByUserId(userId);
 
         if (wallet != null) {
-            saveWallet(wallet);
+            // Fill only if still absent, so a balance moved in Redis meanwhile is not overwritten by this read.
+            // A fill does not change the wallet, so other instances need no invalidation
+            warmWallets(List.of(wallet));
         }
 
         return wallet;
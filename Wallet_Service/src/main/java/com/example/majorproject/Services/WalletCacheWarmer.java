@@ -0,0 +1,58 @@
+package com.example.majorproject.Services;
+
+import com.example.majorproject.Models.Wallet;
+import com.example.majorproject.Repositories.WalletRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Copies every wallet from MySQL into Redis once the service has started, so the first transfers
+ * after a deploy or a Redis restart do not all fall through to the database. Each page is written with
+ * one script call that only fills wallets Redis does not have yet.
+ * <p>
+ * Registered as the {@code walletCacheWarmup} health indicator of the readiness group.
+ */
+@Component("walletCacheWarmup")
+public class WalletCacheWarmer extends KeysetCacheWarmer<Wallet> {
+
+    private final WalletRepository walletRepository;
+    private final WalletCacheService walletCacheService;
+
+    public WalletCacheWarmer(WalletRepository walletRepository,
+                             WalletCacheService walletCacheService,
+                             @Value("${wallet.cache.warmup.enabled:true}") boolean enabled,
+                             @Value("${wallet.cache.warmup.batch-size:1000}") int batchSize,
+                             @Value("${wallet.cache.warmup.parallelism:4}") int parallelism) {
+        super("wallet", enabled, batchSize, parallelism);
+        this.walletRepository = walletRepository;
+        this.walletCacheService = walletCacheService;
+    }
+
+    @Override
+    protected long count() {
+        return walletRepository.count();
+    }
+
+    @Override
+    protected int maxId() {
+        return walletRepository.findMaxId();
+    }
+
+    @Override
+    protected List<Wallet> findPage(int afterId, int lastId, Pageable page) {
+        return walletRepository.findPage(afterId, lastId, page);
+    }
+
+    @Override
+    protected int idOf(Wallet wallet) {
+        return wallet.getId();
+    }
+
+    @Override
+    protected long warm(List<Wallet> wallets) {
+        return walletCacheService.warmWallets(wallets);
+    }
+}
@@ -1,21 +1,32 @@
 package com.example.majorproject.Services;
 
+import com.example.majorproject.Events.TransactionCreatedEvent;
+import com.example.majorproject.Events.UserCreatedEvent;
+import com.example.majorproject.Events.WalletUpdatedEvent;
 import com.example.majorproject.Exceptions.WalletNotFoundException;
 import com.example.majorproject.Models.CurrencyType;
 import com.example.majorproject.Repositories.WalletRepository;
 import com.example.majorproject.Models.Wallet;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
-import org.json.simple.parser.ParseException;
+import io.micrometer.context.ContextSnapshot;
+import io.micrometer.context.ContextSnapshotFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.Acknowledgment;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class WalletService {
@@ -33,11 +44,26 @@ public class WalletService {
 //    private static final String LOW_WALLET_BALANCE_TOPIC = "low-wallet-balance";
 
     private static final String currency="USD";
+    // Reloads of wallets evicted from Redis before a transfer falls back to MySQL alone
+    private static final int MOVE_ATTEMPTS = 3;
+
+    private static final ScheduledExecutorService publishRetryScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "wallet-updated-retry");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Value("${wallet.kafka.publish-attempts:3}")
+    private int publishAttempts;
+
+    @Value("${wallet.kafka.publish-retry-backoff-ms:1000}")
+    private long publishRetryBackoffMs;
+
+    private static final ContextSnapshotFactory contextSnapshotFactory = ContextSnapshotFactory.builder().build();
 
-    private final JSONParser jsonParser=new JSONParser();
 
     @Autowired
-    KafkaTemplate<String, String> kafkaTemplate;
+    KafkaTemplate<String, Object> kafkaTemplate;
 
     @Autowired
     WalletCacheService walletCacheService;
@@ -46,19 +72,18 @@ public class WalletService {
     WalletRepository walletRepository;
 
     @Autowired
-    ObjectMapper objectMapper;
+    WalletBatchService walletBatchService;
+
+    @Autowired(required = false)
+    LedgerEngine ledgerEngine;
 
     @KafkaListener(topics = "${kafka.topic.user-created}",groupId = "${spring.kafka.user-created-group}")
-    public void userCreated(String msg) {
-        JSONObject data;
-        try {
-            data = (JSONObject) jsonParser.parse(msg);
-        } catch (ParseException e) {
-            logger.error("Failed to parse user-created event: {}", msg, e);
+    public void userCreated(UserCreatedEvent event) {
+        if (event == null || event.id() == null) {
+            logger.error("Dropping user-created event without id: {}", event);
             return;
         }
-        String id=data.get("id").toString();
-        Integer userid=Integer.parseInt(id);
+        Integer userid=event.id();
 
         Wallet wallet=walletRepository.findByUserId(userid);
 
@@ -73,88 +98,242 @@ public class WalletService {
         logger.info("Wallet created for {}", userid);
     }
 
-    @KafkaListener(topics = "${kafka.topics.transaction-created}", groupId = "${spring.kafka.transaction-created-group}")
-    public void transactionCreated(String msg) throws JsonProcessingException {
-        JSONObject data;
-        try {
-            data = (JSONObject) jsonParser.parse(msg);
-        } catch (ParseException e) {
-            logger.error("Failed to parse transaction-created event: {}", msg, e);
+    @KafkaListener(topics = "${kafka.topics.transaction-created}", groupId = "${spring.kafka.transaction-created-group}",
+            autoStartup = "#{!${wallet.kafka.batch.enabled:false} && !${wallet.ledger.enabled:false}}")
+    public void transactionCreated(TransactionCreatedEvent transfer) {
+        if (!isValid(transfer)) {
             return;
         }
+        logger.info("Received transaction-created event for txnId={}", transfer.externalTransactionId());
+
+        Integer sender = transfer.sender();
+        Integer receiver = transfer.receiver();
+        Long amount = transfer.amount();
+        String externalTransactionId = transfer.externalTransactionId();
+
+        // ✅ Validate and move the balance in Redis in one round trip (fast pre-check + write-through)
+        WalletCacheService.BalanceMove move = walletCacheService.moveBalance(sender, receiver, amount);
+
+        // Cache miss: load the wallets (fallback to DB) and retry; a wallet evicted again in between is reloaded again
+        for (int attempt = 0; attempt < MOVE_ATTEMPTS && isMissing(move); attempt++) {
+            Wallet senderWallet = walletCacheService.getWallet(sender);
+            if (senderWallet == null || senderWallet.getBalance() == null) {
+                logger.warn("Sender wallet not found for {}", sender);
+                sendFailedEvent(sender, receiver, amount, externalTransactionId, "Sender wallet not found");
+                return;
+            }
+            Wallet receiverWallet = walletCacheService.getWallet(receiver);
+            if (receiverWallet == null) {
+                logger.warn("Receiver wallet not found for {}", receiver);
+                sendFailedEvent(sender, receiver, amount, externalTransactionId, "Receiver wallet not found");
+                return;
+            }
+            move = walletCacheService.moveBalance(sender, receiver, amount);
+        }
 
-        logger.info("Received transaction-created event: {}", msg);
+        // ✅ Redis could not move the balance: that is only a hint, the guarded DB transfer decides
+        if (move.status() != WalletCacheService.MoveStatus.MOVED) {
+            transferInDb(transfer, move.status());
+            return;
+        }
 
-        Integer sender = ((Number) data.get("sender")).intValue();
-        Integer receiver = ((Number) data.get("receiver")).intValue();
-        Long amount = ((Number) data.get("amount")).longValue();
-        String externalTransactionId = (String) data.get("externalTransactionId");
+        // ✅ Debit + credit in one statement, guarded by balance >= amount in the DB
+        try {
+            if (!sender.equals(receiver) && walletRepository.transfer(sender, receiver, amount) == 0) {
+                // Redis and MySQL disagreed; MySQL wins and Redis reloads from it
+                evictWallets(sender, receiver);
+                logger.warn("Insufficient balance for {}", sender);
+                sendFailedEvent(sender, receiver, amount, externalTransactionId, "Insufficient balance");
+                return;
+            }
+        } catch (RuntimeException e) {
+            evictWallets(sender, receiver);
+            throw e;
+        }
 
-        // ✅ Use cache (with fallback to DB)
-        Wallet senderWallet = walletCacheService.getWallet(sender);
-        Wallet receiverWallet = walletCacheService.getWallet(receiver);
+        logger.info("Wallets updated: senderId={}, receiverId={}, amount={}", sender, receiver, amount);
 
-        // Validation
-        if (senderWallet == null || senderWallet.getBalance() == null) {
-            logger.warn("Sender wallet not found for {}", sender);
-            JSONObject walletEventData = FailedEvent(sender, receiver, amount, externalTransactionId, "Sender wallet not found");
-            kafkaTemplate.send(WALLET_UPDATED_TOPIC, objectMapper.writeValueAsString(walletEventData));
-            return;
+        // ✅ Send event
+        WalletUpdatedEvent walletEvent = WalletUpdatedEvent.success(sender, receiver, amount, externalTransactionId,
+                move.senderWalletId(), move.receiverWalletId());
+        publishWalletUpdated(sender.toString(), walletEvent);
+
+        logger.info("Published wallet-updated event for txnId={} with status={}", externalTransactionId, walletEvent.status());
+    }
+
+    // ✅ Batch mode: a whole poll is applied in one DB transaction and one Redis pipeline
+    @KafkaListener(topics = "${kafka.topics.transaction-created}", groupId = "${spring.kafka.transaction-created-group}",
+            containerFactory = "batchKafkaListenerContainerFactory",
+            autoStartup = "#{${wallet.kafka.batch.enabled:false} && !${wallet.ledger.enabled:false}}")
+    public void transactionsCreated(List<TransactionCreatedEvent> events) {
+        // Records that failed to deserialize arrive as null and are dropped here
+        List<TransactionCreatedEvent> transfers = new ArrayList<>(events.size());
+        for (TransactionCreatedEvent transfer : events) {
+            if (isValid(transfer)) {
+                transfers.add(transfer);
+            }
         }
-        if (receiverWallet == null) {
-            logger.warn("Receiver wallet not found for {}", receiver);
-            JSONObject walletEventData = FailedEvent(sender, receiver, amount, externalTransactionId, "Receiver wallet not found");
-            kafkaTemplate.send(WALLET_UPDATED_TOPIC, objectMapper.writeValueAsString(walletEventData));
-            return;
+        logger.info("Received batch of {} transaction-created events", events.size());
+
+        List<WalletBatchService.TransferOutcome> outcomes = walletBatchService.applyTransfers(transfers);
+
+        // ✅ Publish every result of the poll together, in the order received
+        for (WalletBatchService.TransferOutcome outcome : outcomes) {
+            TransactionCreatedEvent transfer = outcome.request();
+            WalletUpdatedEvent walletEvent;
+            if (outcome.success()) {
+                walletEvent = WalletUpdatedEvent.success(transfer.sender(), transfer.receiver(), transfer.amount(),
+                        transfer.externalTransactionId(), outcome.senderWalletId(), outcome.receiverWalletId());
+            } else {
+                logger.warn("{} for txnId={}", outcome.reason(), transfer.externalTransactionId());
+                walletEvent = WalletUpdatedEvent.failed(transfer.sender(), transfer.receiver(), transfer.amount(),
+                        transfer.externalTransactionId(), outcome.reason());
+            }
+            publishWalletUpdated(transfer.sender().toString(), walletEvent);
+        }
+        logger.info("Published {} wallet-updated events for batch of {} records", outcomes.size(), events.size());
+    }
+
+    private boolean isValid(TransactionCreatedEvent transfer) {
+        if (transfer == null || transfer.sender() == null || transfer.receiver() == null || transfer.amount() == null) {
+            logger.error("Dropping incomplete transaction-created event: {}", transfer);
+            return false;
         }
-        if (senderWallet.getBalance() < amount) {
-            logger.warn("Insufficient balance for {}", sender);
-            JSONObject walletEventData = FailedEvent(sender, receiver, amount, externalTransactionId, "Insufficient balance");
-            kafkaTemplate.send(WALLET_UPDATED_TOPIC, objectMapper.writeValueAsString(walletEventData));
+        return true;
+    }
+
+    // ✅ Ledger mode: balances are owned by the in-process ledger. The listener returns as soon as the transfer
+    // is queued, but the offset is only acknowledged once its batch is persisted and the result published, so a
+    // crash before the flush redelivers the record. A full ledger throws LedgerBusyException and the container
+    // backs off and redelivers instead of blocking the poll thread.
+    @KafkaListener(topics = "${kafka.topics.transaction-created}", groupId = "${spring.kafka.transaction-created-group}",
+            containerFactory = "ledgerKafkaListenerContainerFactory",
+            autoStartup = "${wallet.ledger.enabled:false}")
+    public void ledgerTransactionCreated(TransactionCreatedEvent transfer, Acknowledgment ack) {
+        if (!isValid(transfer)) {
+            ack.acknowledge();
             return;
         }
+        logger.info("Received transaction-created event for txnId={}", transfer.externalTransactionId());
+        // The result is published from a ledger thread; carry the listener's trace over to it
+        ContextSnapshot context = contextSnapshotFactory.captureAll();
+        ledgerEngine.transfer(transfer.sender(), transfer.receiver(), transfer.amount(),
+                transfer.externalTransactionId()).whenComplete((result, ex) -> {
+            CompletableFuture<Void> published;
+            try (ContextSnapshot.Scope scope = context.setThreadLocals()) {
+                published = publishLedgerResult(transfer.sender(), transfer.receiver(), transfer.amount(),
+                        transfer.externalTransactionId(), result, ex);
+            } catch (RuntimeException e) {
+                logger.error("Failed to publish ledger result for txnId={}", transfer.externalTransactionId(), e);
+                published = CompletableFuture.completedFuture(null);
+            }
+            published.whenComplete((sent, sendEx) -> ack.acknowledge());
+        });
+    }
 
-        // ✅ Update DB
-        walletRepository.updateWallet(senderWallet.getId(), -amount);
-        walletRepository.updateWallet(receiverWallet.getId(), amount);
+    private void sendFailedEvent(Integer sender, Integer receiver, Long amount, String externalTransactionId,
+                                 String reason) {
+        WalletUpdatedEvent walletEvent = WalletUpdatedEvent.failed(sender, receiver, amount, externalTransactionId, reason);
+        publishWalletUpdated(sender.toString(), walletEvent);
+    }
 
-        // ✅ Refresh from DB and update Redis (ensure sync)
-        Wallet senderWalletUpdated = walletRepository.findByUserId(sender);
-        Wallet receiverWalletUpdated = walletRepository.findByUserId(receiver);
+    private static boolean isMissing(WalletCacheService.BalanceMove move) {
+        return move.status() == WalletCacheService.MoveStatus.SENDER_MISSING
+                || move.status() == WalletCacheService.MoveStatus.RECEIVER_MISSING;
+    }
 
-        walletCacheService.saveWallet(senderWalletUpdated);
-        walletCacheService.saveWallet(receiverWalletUpdated);
+    // Applies a transfer that Redis rejected (or kept losing the wallets for) straight against MySQL
+    private void transferInDb(TransactionCreatedEvent transfer, WalletCacheService.MoveStatus cacheStatus) {
+        Integer sender = transfer.sender();
+        Integer receiver = transfer.receiver();
+        Long amount = transfer.amount();
+        String externalTransactionId = transfer.externalTransactionId();
 
-        logger.info("Wallets updated: senderId={}, receiverId={}, amount={}", sender, receiver, amount);
+        boolean moved;
+        try {
+            moved = !sender.equals(receiver) && walletRepository.transfer(sender, receiver, amount) > 0;
+        } catch (RuntimeException e) {
+            evictWallets(sender, receiver);
+            throw e;
+        }
+        Map<Integer, Wallet> wallets = new HashMap<>();
+        walletRepository.findByUserIdIn(List.of(sender, receiver)).forEach(wallet -> wallets.put(wallet.getUserId(), wallet));
+        Wallet senderWallet = wallets.get(sender);
+        Wallet receiverWallet = wallets.get(receiver);
+        if (sender.equals(receiver)) {
+            moved = senderWallet != null && senderWallet.getBalance() != null && senderWallet.getBalance() >= amount;
+        }
 
-        // ✅ Send event
-        JSONObject walletEventData = SuccessEvent(sender, receiver, amount, externalTransactionId,
-                senderWalletUpdated.getId(), receiverWalletUpdated.getId());
-        kafkaTemplate.send(WALLET_UPDATED_TOPIC, objectMapper.writeValueAsString(walletEventData));
+        if (moved || cacheStatus != WalletCacheService.MoveStatus.INSUFFICIENT_BALANCE) {
+            // Redis disagreed with MySQL (or lost the wallets): drop the cached copies so they reload
+            evictWallets(sender, receiver);
+        }
+        if (!moved) {
+            String reason = senderWallet == null ? "Sender wallet not found"
+                    : receiverWallet == null ? "Receiver wallet not found" : "Insufficient balance";
+            logger.warn("{} for txnId={}", reason, externalTransactionId);
+            sendFailedEvent(sender, receiver, amount, externalTransactionId, reason);
+            return;
+        }
+        logger.info("Wallets updated in MySQL after cache status {}: senderId={}, receiverId={}, amount={}",
+                cacheStatus, sender, receiver, amount);
+        WalletUpdatedEvent walletEvent = WalletUpdatedEvent.success(sender, receiver, amount, externalTransactionId,
+                senderWallet.getId(), receiverWallet.getId());
+        publishWalletUpdated(sender.toString(), walletEvent);
+        logger.info("Published wallet-updated event for txnId={} with status={}", externalTransactionId, walletEvent.status());
+    }
 
-        logger.info("Published wallet-updated event for txnId={} with status={}", externalTransactionId, walletEventData.get("status"));
+    // Drop the cached balances after Redis and MySQL disagreed; the next read reloads them from MySQL.
+    // Deleting (rather than writing the DB balance) cannot overwrite a Lua move that ran in between.
+    private void evictWallets(Integer sender, Integer receiver) {
+        try {
+            walletCacheService.evictWallets(List.of(sender, receiver));
+        } catch (RuntimeException e) {
+            logger.error("Failed to evict wallets {} and {} from Redis", sender, receiver, e);
+        }
     }
 
-    public JSONObject FailedEvent(Integer sender, Integer receiver, Long amount, String externalTransactionId, String reason) {
-        JSONObject data = new JSONObject();
-        data.put("sender", sender);
-        data.put("receiver", receiver);
-        data.put("amount", amount);
-        data.put("externalTransactionId", externalTransactionId);
-        data.put("status", "failed");
-        data.put("reason", reason);
-        return data;
+    private CompletableFuture<Void> publishLedgerResult(Integer sender, Integer receiver, Long amount, String externalTransactionId,
+                                                        LedgerEngine.TransferResult result, Throwable ex) {
+        WalletUpdatedEvent walletEvent;
+        if (ex != null) {
+            logger.error("Ledger transfer failed for txnId={}", externalTransactionId, ex);
+            walletEvent = WalletUpdatedEvent.failed(sender, receiver, amount, externalTransactionId, "Wallet update failed");
+        } else if (result.success()) {
+            walletEvent = WalletUpdatedEvent.success(sender, receiver, amount, externalTransactionId,
+                    result.senderWalletId(), result.receiverWalletId());
+        } else {
+            logger.warn("{} for txnId={}", result.reason(), externalTransactionId);
+            walletEvent = WalletUpdatedEvent.failed(sender, receiver, amount, externalTransactionId, result.reason());
+        }
+        CompletableFuture<Void> published = publishWalletUpdated(sender.toString(), walletEvent);
+        logger.info("Published wallet-updated event for txnId={} with status={}", externalTransactionId, walletEvent.status());
+        return published;
     }
-    public JSONObject SuccessEvent(Integer sender,Integer receiver,Long amount,String externalTransactionId,Integer senderWalletId, Integer receiverWalletId){
-        JSONObject data=new JSONObject();
-        data.put("sender",sender);
-        data.put("receiver",receiver);
-        data.put("amount",amount);
-        data.put("externalTransactionId",externalTransactionId);
-        data.put("status","success");
-        data.put("senderWalletId",senderWalletId);
-        data.put("receiverWalletId",receiverWalletId);
-        return data;
+
+    // ✅ wallet-updated is what moves a transaction out of PENDING, so a send the producer gave up on is retried
+    // (after publish-retry-backoff-ms) up to publish-attempts times; every failure is logged and counted by the
+    // template's SendFailureListener. Completes once the event was acknowledged or given up on.
+    private CompletableFuture<Void> publishWalletUpdated(String key, WalletUpdatedEvent walletEvent) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        publishWalletUpdated(key, walletEvent, 1, done);
+        return done;
+    }
+
+    private void publishWalletUpdated(String key, WalletUpdatedEvent walletEvent, int attempt, CompletableFuture<Void> done) {
+        kafkaTemplate.send(WALLET_UPDATED_TOPIC, key, walletEvent).whenComplete((sent, ex) -> {
+            if (ex == null) {
+                done.complete(null);
+            } else if (attempt < publishAttempts) {
+                // Not from the producer's callback thread: a send may block on metadata or a full buffer
+                publishRetryScheduler.schedule(() -> publishWalletUpdated(key, walletEvent, attempt + 1, done),
+                        publishRetryBackoffMs, TimeUnit.MILLISECONDS);
+            } else {
+                logger.error("Giving up on wallet-updated event for txnId={} after {} attempts",
+                        walletEvent.externalTransactionId(), attempt);
+                done.complete(null);
+            }
+        });
     }
 
 
@@ -166,5 +345,12 @@ public class WalletService {
         return wallet.getBalance();
     }
 
+    // ✅ Same as getBalance without blocking the caller's thread on Redis
+    public Mono<Long> getBalanceReactive(Integer userId) {
+        return walletCacheService.getWalletReactive(userId)
+                .switchIfEmpty(Mono.error(() -> new WalletNotFoundException("Wallet not found for userId " + userId)))
+                .map(Wallet::getBalance);
+    }
+
 
 }
@@ -0,0 +1,24 @@
+-- Validates and moves a balance between two WALLET:{userId} hashes atomically.
+-- KEYS[1] = sender wallet key, KEYS[2] = receiver wallet key, ARGV[1] = amount,
+-- ARGV[2] = near-cache invalidation channel, ARGV[3] = invalidation message (published only when moved)
+-- Returns MOVED:{senderWalletId}:{receiverWalletId}, SENDER_MISSING, RECEIVER_MISSING or INSUFFICIENT_BALANCE
+local senderBalance = redis.call('HGET', KEYS[1], 'balance')
+if not senderBalance then
+    return 'SENDER_MISSING'
+end
+local receiverBalance = redis.call('HGET', KEYS[2], 'balance')
+if not receiverBalance then
+    return 'RECEIVER_MISSING'
+end
+
+local amount = tonumber(ARGV[1])
+if tonumber(senderBalance) < amount then
+    return 'INSUFFICIENT_BALANCE'
+end
+
+if KEYS[1] ~= KEYS[2] then
+    redis.call('HINCRBY', KEYS[1], 'balance', -amount)
+    redis.call('HINCRBY', KEYS[2], 'balance', amount)
+    redis.call('PUBLISH', ARGV[2], ARGV[3])
+end
+return 'MOVED:' .. redis.call('HGET', KEYS[1], 'id') .. ':' .. redis.call('HGET', KEYS[2], 'id')
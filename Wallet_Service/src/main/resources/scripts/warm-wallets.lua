@@ -0,0 +1,14 @@
+-- Fills WALLET:{userId} hashes that are not cached yet, leaving existing ones untouched so a
+-- balance already moved in Redis is never overwritten by an older database row.
+-- KEYS[i] = wallet key, ARGV[4i-3..4i] = id, userId, balance, currency of that wallet
+-- Returns the number of hashes written
+local filled = 0
+for i, key in ipairs(KEYS) do
+    if redis.call('EXISTS', key) == 0 then
+        local base = (i - 1) * 4
+        redis.call('HSET', key, 'id', ARGV[base + 1], 'userId', ARGV[base + 2],
+                'balance', ARGV[base + 3], 'currency', ARGV[base + 4])
+        filled = filled + 1
+    end
+end
+return filled
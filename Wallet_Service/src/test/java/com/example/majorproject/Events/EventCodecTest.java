@@ -0,0 +1,98 @@
+package com.example.majorproject.Events;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+public class EventCodecTest {
+
+    private final EventSerializer serializer = new EventSerializer();
+
+    @Test
+    public void walletUpdated_roundTrip() {
+        WalletUpdatedEvent event = WalletUpdatedEvent.success(1, 2, 5L, "txn-1", 100, 200);
+
+        byte[] bytes = serializer.serialize("wallet-updated", event);
+
+        Assert.assertEquals(event, new EventDeserializer<>(WalletUpdatedEvent.class).deserialize("wallet-updated", bytes));
+    }
+
+    @Test
+    public void failedEvent_omitsNullFields() {
+        byte[] bytes = serializer.serialize("wallet-updated",
+                WalletUpdatedEvent.failed(1, 2, 5L, "txn-1", "Insufficient balance"));
+
+        String json = new String(bytes, StandardCharsets.UTF_8);
+        Assert.assertTrue(json.contains("\"status\":\"failed\""));
+        Assert.assertFalse(json.contains("senderWalletId"));
+    }
+
+    @Test
+    public void transactionCreated_ignoresUnknownFields() {
+        // Shape of the old payload, which was the whole Transaction entity
+        String legacy = "{\"id\":7,\"externalTransactionId\":\"txn-1\",\"sender\":1,\"receiver\":2,\"amount\":5," +
+                "\"comment\":\"rent\",\"status\":\"PENDING\",\"createdAt\":1700000000000}";
+
+        TransactionCreatedEvent event = new EventDeserializer<>(TransactionCreatedEvent.class)
+                .deserialize("transaction-created", legacy.getBytes(StandardCharsets.UTF_8));
+
+        Assert.assertEquals(new TransactionCreatedEvent(1, 2, 5L, "txn-1"), event);
+    }
+
+    @Test
+    public void binaryTopic_roundTripAndSmallerThanJson() {
+        EventSerializer binarySerializer = new EventSerializer();
+        binarySerializer.configure(Map.of(EventSerializer.BINARY_TOPICS_CONFIG, "wallet-updated"), false);
+        WalletUpdatedEvent event = WalletUpdatedEvent.failed(1, 2, 5_000L, "2f1c7c3e-6a4b-4d0e-9f4e-3a1b2c3d4e5f",
+                "Insufficient balance");
+
+        byte[] binary = binarySerializer.serialize("wallet-updated", event);
+        byte[] json = serializer.serialize("wallet-updated", event);
+
+        Assert.assertEquals(BinaryEventCodec.MAGIC, binary[0]);
+        Assert.assertTrue(binary.length * 2 < json.length);
+        // The same deserializer reads both formats
+        EventDeserializer<WalletUpdatedEvent> deserializer = new EventDeserializer<>(WalletUpdatedEvent.class);
+        Assert.assertEquals(event, deserializer.deserialize("wallet-updated", binary));
+        Assert.assertEquals(event, deserializer.deserialize("wallet-updated", json));
+    }
+
+    @Test
+    public void binary_negativeAndLargeNumbers() {
+        EventSerializer binarySerializer = new EventSerializer();
+        binarySerializer.configure(Map.of(EventSerializer.BINARY_TOPICS_CONFIG, "transaction-created"), false);
+        TransactionCreatedEvent event = new TransactionCreatedEvent(-1, Integer.MAX_VALUE, Long.MIN_VALUE, "");
+
+        byte[] bytes = binarySerializer.serialize("transaction-created", event);
+
+        Assert.assertEquals(event, new EventDeserializer<>(TransactionCreatedEvent.class).deserialize("transaction-created", bytes));
+    }
+
+    @Test
+    public void binary_userCreatedV1_decodesWithoutName() {
+        // magic | schema id 1 | version 1 | no nulls | id=1 (zig-zag varint)
+        byte[] v1 = {0x00, 0x00, 0x01, 0x01, 0x00, 0x02};
+
+        UserCreatedEvent event = new EventDeserializer<>(UserCreatedEvent.class).deserialize("user-created", v1);
+
+        Assert.assertEquals(new UserCreatedEvent(1, null), event);
+    }
+
+    @Test(expected = SerializationException.class)
+    public void binary_wrongEventType_throws() {
+        EventSerializer binarySerializer = new EventSerializer();
+        binarySerializer.configure(Map.of(EventSerializer.BINARY_TOPICS_CONFIG, "user-created"), false);
+        byte[] bytes = binarySerializer.serialize("user-created", new UserCreatedEvent(1, "John"));
+
+        new EventDeserializer<>(TransactionCreatedEvent.class).deserialize("user-created", bytes);
+    }
+
+    @Test(expected = SerializationException.class)
+    public void invalidPayload_throws() {
+        new EventDeserializer<>(UserCreatedEvent.class)
+                .deserialize("user-created", "Invalid-Json format".getBytes(StandardCharsets.UTF_8));
+    }
+}
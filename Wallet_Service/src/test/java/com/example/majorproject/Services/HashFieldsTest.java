@@ -0,0 +1,35 @@
+package com.example.majorproject.Services;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HashFieldsTest {
+
+    @Test
+    public void plainFieldsRoundTrip() {
+        Assert.assertEquals("42", HashFields.encode(42L, HashFields.Format.PLAIN));
+        Assert.assertEquals("USD", HashFields.encode("USD", HashFields.Format.PLAIN));
+        Assert.assertEquals("", HashFields.encode(null, HashFields.Format.PLAIN));
+
+        Assert.assertEquals(Long.valueOf(42), HashFields.toLong("42"));
+        Assert.assertEquals("USD", HashFields.text("USD"));
+        Assert.assertNull(HashFields.text(""));
+        Assert.assertNull(HashFields.toInteger(""));
+    }
+
+    @Test
+    public void legacyJsonFieldsStillDecode() {
+        // What GenericJackson2JsonRedisSerializer wrote for the same values
+        Assert.assertEquals("\"USD\"", HashFields.encode("USD", HashFields.Format.JSON));
+        Assert.assertEquals("USD", HashFields.text("\"USD\""));
+        Assert.assertEquals("Zoë \"Z\"", HashFields.text("\"Zoë \\\"Z\\\"\""));
+        Assert.assertEquals(Integer.valueOf(7), HashFields.toInteger("7"));
+    }
+
+    @Test
+    public void plainTextStartingWithQuote_isWrittenQuoted() {
+        String encoded = HashFields.encode("\"quoted\"", HashFields.Format.PLAIN);
+
+        Assert.assertEquals("\"quoted\"", HashFields.text(encoded));
+    }
+}
@@ -0,0 +1,255 @@
+package com.example.majorproject.Services;
+
+import com.example.majorproject.Exceptions.LedgerBusyException;
+import com.example.majorproject.Models.CurrencyType;
+import com.example.majorproject.Models.Wallet;
+import com.example.majorproject.Repositories.WalletRepository;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.Silent.class)
+public class LedgerEngineTest {
+
+    @Mock
+    private WalletRepository walletRepository;
+
+    @Mock
+    private WalletCacheService walletCacheService;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private LedgerEngine ledgerEngine;
+
+    private final AtomicInteger txnIds = new AtomicInteger();
+
+    @Before
+    public void setUp() {
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        // Every guarded delta applies unless a test says otherwise
+        when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenAnswer(invocation -> {
+            int[] updated = new int[invocation.<List<?>>getArgument(1).size()];
+            Arrays.fill(updated, 1);
+            return updated;
+        });
+        ledgerEngine = engine(1000, 60_000L);
+    }
+
+    private LedgerEngine engine(int maxInFlight, long verifyIntervalMs) {
+        LedgerEngine engine = new LedgerEngine(walletRepository, walletCacheService, jdbcTemplate, transactionManager);
+        ReflectionTestUtils.setField(engine, "shardCount", 4);
+        ReflectionTestUtils.setField(engine, "batchSize", 100);
+        ReflectionTestUtils.setField(engine, "flushIntervalMs", 1L);
+        ReflectionTestUtils.setField(engine, "maxInFlight", maxInFlight);
+        ReflectionTestUtils.setField(engine, "acquireTimeoutMs", 50L);
+        ReflectionTestUtils.setField(engine, "verifyIntervalMs", verifyIntervalMs);
+        engine.start();
+        return engine;
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        ledgerEngine.stop();
+    }
+
+    private String txn() {
+        return "txn-" + txnIds.incrementAndGet();
+    }
+
+    private Wallet wallet(Integer id, Integer userId, Long balance) {
+        return Wallet.builder().id(id).userId(userId).balance(balance).currency(CurrencyType.USD).build();
+    }
+
+    @Test
+    public void transferSuccessfully() throws Exception {
+        when(walletRepository.findByUserId(1)).thenReturn(wallet(100, 1, 10L));
+        when(walletRepository.findByUserId(2)).thenReturn(wallet(200, 2, 10L));
+
+        LedgerEngine.TransferResult result = ledgerEngine.transfer(1, 2, 5L, txn()).get(5, TimeUnit.SECONDS);
+
+        Assert.assertTrue(result.success());
+        Assert.assertEquals(Integer.valueOf(100), result.senderWalletId());
+        Assert.assertEquals(Integer.valueOf(200), result.receiverWalletId());
+        verify(jdbcTemplate, times(1)).batchUpdate(startsWith("insert ignore into applied_transfer"), anyList());
+        verify(jdbcTemplate, times(1)).batchUpdate(startsWith("update wallet"), anyList());
+    }
+
+    @Test
+    public void senderWalletNotFound() throws Exception {
+        when(walletRepository.findByUserId(1)).thenReturn(null);
+
+        LedgerEngine.TransferResult result = ledgerEngine.transfer(1, 2, 5L, txn()).get(5, TimeUnit.SECONDS);
+
+        Assert.assertFalse(result.success());
+        Assert.assertEquals("Sender wallet not found", result.reason());
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    @Test
+    public void insufficientBalance() throws Exception {
+        when(walletRepository.findByUserId(1)).thenReturn(wallet(100, 1, 10L));
+
+        LedgerEngine.TransferResult result = ledgerEngine.transfer(1, 2, 50L, txn()).get(5, TimeUnit.SECONDS);
+
+        Assert.assertFalse(result.success());
+        Assert.assertEquals("Insufficient balance", result.reason());
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    @Test
+    public void insufficientBalance_rereadsSenderFromDb() throws Exception {
+        ledgerEngine.stop();
+        ledgerEngine = engine(1000, 0L);
+        // Another writer credited the sender after the ledger loaded it
+        when(walletRepository.findByUserId(1)).thenReturn(wallet(100, 1, 10L), wallet(100, 1, 100L));
+        when(walletRepository.findByUserId(2)).thenReturn(wallet(200, 2, 0L));
+
+        LedgerEngine.TransferResult result = ledgerEngine.transfer(1, 2, 50L, txn()).get(5, TimeUnit.SECONDS);
+
+        Assert.assertTrue(result.success());
+        verify(walletRepository, times(2)).findByUserId(1);
+    }
+
+    @Test
+    public void guardedFlushRejected_replaysTransfersOneByOne() throws Exception {
+        // Another writer drained the sender: MySQL refuses the netted debit
+        when(jdbcTemplate.batchUpdate(startsWith("update wallet"), anyList())).thenReturn(new int[]{0, 1});
+        when(walletRepository.findByUserId(1)).thenReturn(wallet(100, 1, 10L));
+        when(walletRepository.findByUserId(2)).thenReturn(wallet(200, 2, 0L));
+        when(walletRepository.transfer(1, 2, 5L)).thenReturn(0);
+
+        LedgerEngine.TransferResult result = ledgerEngine.transfer(1, 2, 5L, txn()).get(5, TimeUnit.SECONDS);
+
+        Assert.assertFalse(result.success());
+        Assert.assertEquals("Insufficient balance", result.reason());
+        verify(walletRepository).transfer(1, 2, 5L);
+    }
+
+    @Test
+    public void redeliveredTransfer_isNotAppliedTwice() throws Exception {
+        when(walletRepository.findByUserId(1)).thenReturn(wallet(100, 1, 10L));
+        when(walletRepository.findByUserId(2)).thenReturn(wallet(200, 2, 0L));
+        // txn-1 is already in applied_transfer
+        when(jdbcTemplate.batchUpdate(startsWith("insert ignore into applied_transfer"), anyList()))
+                .thenReturn(new int[]{0}, new int[]{1});
+
+        LedgerEngine.TransferResult redelivered = ledgerEngine.transfer(1, 2, 10L, "txn-1").get(5, TimeUnit.SECONDS);
+
+        Assert.assertTrue(redelivered.success());
+        verify(jdbcTemplate, never()).batchUpdate(startsWith("update wallet"), anyList());
+
+        // The skipped transfer left the in-memory balance untouched
+        LedgerEngine.TransferResult next = ledgerEngine.transfer(1, 2, 10L, "txn-2").get(5, TimeUnit.SECONDS);
+        Assert.assertTrue(next.success());
+        verify(jdbcTemplate, times(1)).batchUpdate(startsWith("update wallet"), anyList());
+    }
+
+    @Test(expected = LedgerBusyException.class)
+    public void fullLedger_throwsBusyInsteadOfBlocking() throws Exception {
+        ledgerEngine.stop();
+        ledgerEngine = engine(1, 60_000L);
+        CountDownLatch release = new CountDownLatch(1);
+        when(walletRepository.findByUserId(1)).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return wallet(100, 1, 10L);
+        });
+
+        try {
+            ledgerEngine.transfer(1, 2, 5L, txn());
+            ledgerEngine.transfer(1, 2, 5L, txn());
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void transferAfterStop_failsWithoutLosingItsPermit() throws Exception {
+        ledgerEngine.stop();
+
+        for (int i = 0; i < 3; i++) {
+            try {
+                ledgerEngine.transfer(1, 2, 5L, txn());
+                Assert.fail("A stopped ledger must not take transfers");
+            } catch (LedgerBusyException expected) {
+            }
+        }
+        Semaphore inFlight = (Semaphore) ReflectionTestUtils.getField(ledgerEngine, "inFlight");
+        Assert.assertEquals(1000, inFlight.availablePermits());
+    }
+
+    @Test
+    public void transferRejectedByStoppedShard_releasesItsPermit() throws Exception {
+        // The shards shut down between the stopped check and the hand-off
+        ledgerEngine.stop();
+        ReflectionTestUtils.setField(ledgerEngine, "stopped", false);
+
+        CompletableFuture<LedgerEngine.TransferResult> result = ledgerEngine.transfer(1, 2, 5L, txn());
+
+        Assert.assertTrue(result.isCompletedExceptionally());
+        Semaphore inFlight = (Semaphore) ReflectionTestUtils.getField(ledgerEngine, "inFlight");
+        Assert.assertEquals(1000, inFlight.availablePermits());
+        ReflectionTestUtils.setField(ledgerEngine, "stopped", true);
+    }
+
+    @Test
+    public void receiverWalletNotFound_refundsSender() throws Exception {
+        when(walletRepository.findByUserId(1)).thenReturn(wallet(100, 1, 10L));
+        when(walletRepository.findByUserId(2)).thenReturn(null);
+
+        LedgerEngine.TransferResult failed = ledgerEngine.transfer(1, 2, 10L, txn()).get(5, TimeUnit.SECONDS);
+        Assert.assertFalse(failed.success());
+        Assert.assertEquals("Receiver wallet not found", failed.reason());
+
+        // The full balance must be available again after the refund
+        when(walletRepository.findByUserId(3)).thenReturn(wallet(300, 3, 0L));
+        LedgerEngine.TransferResult retried = ledgerEngine.transfer(1, 3, 10L, txn()).get(5, TimeUnit.SECONDS);
+        Assert.assertTrue(retried.success());
+    }
+
+    @Test
+    public void hotWallet_neverOverdrawn() throws Exception {
+        when(walletRepository.findByUserId(anyInt()))
+                .thenAnswer(invocation -> {
+                    Integer userId = invocation.getArgument(0);
+                    return wallet(userId * 100, userId, userId == 1 ? 500L : 0L);
+                });
+
+        List<CompletableFuture<LedgerEngine.TransferResult>> results = new ArrayList<>();
+        for (int i = 0; i < 800; i++) {
+            results.add(ledgerEngine.transfer(1, 2 + (i % 7), 1L, txn()));
+        }
+
+        int succeeded = 0;
+        for (CompletableFuture<LedgerEngine.TransferResult> result : results) {
+            if (result.get(5, TimeUnit.SECONDS).success()) {
+                succeeded++;
+            }
+        }
+        Assert.assertEquals(500, succeeded);
+        verify(walletRepository, times(1)).findByUserId(1);
+    }
+}
@@ -0,0 +1,271 @@
+package com.example.majorproject.Services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.Silent.class)
+public class NearCacheTest {
+
+    @Mock
+    private RedisTemplate<String, Object> redisTemplate;
+
+    @Mock
+    private RedisMessageListenerContainer listenerContainer;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private NearCache<String> nearCache;
+
+    private MessageListener invalidationListener;
+
+    @Before
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        nearCache = new NearCache<>("wallets", 100, Duration.ofMinutes(1), Duration.ofMinutes(1),
+                redisTemplate, listenerContainer, meterRegistry);
+
+        ArgumentCaptor<MessageListener> listener = ArgumentCaptor.forClass(MessageListener.class);
+        verify(listenerContainer).addMessageListener(listener.capture(), eq(new ChannelTopic("near-cache:wallets")));
+        invalidationListener = listener.getValue();
+    }
+
+    @Test
+    public void get_keepsRedisHitInL1() {
+        AtomicInteger redisReads = new AtomicInteger();
+
+        Assert.assertEquals("wallet-1", nearCache.get(1, id -> "wallet-" + redisReads.incrementAndGet()));
+        Assert.assertEquals("wallet-1", nearCache.get(1, id -> "wallet-" + redisReads.incrementAndGet()));
+
+        Assert.assertEquals(1, redisReads.get());
+        Assert.assertEquals(1, meterRegistry.get("near.cache.l2").tag("result", "hit").timer().count());
+    }
+
+    @Test
+    public void invalidate_dropsLocalCopyAndPublishes() {
+        nearCache.put(1, "stale");
+
+        nearCache.invalidate(List.of(1, 2));
+
+        Assert.assertEquals("fresh", nearCache.get(1, id -> "fresh"));
+        verify(redisTemplate, times(1)).execute(any(RedisCallback.class));
+    }
+
+    @Test
+    public void invalidationFromAnotherInstance_dropsLocalCopy() {
+        nearCache.put(1, "stale");
+        nearCache.put(3, "kept");
+
+        invalidationListener.onMessage(new DefaultMessage("near-cache:wallets".getBytes(StandardCharsets.UTF_8),
+                "1,2".getBytes(StandardCharsets.UTF_8)), null);
+
+        Assert.assertEquals("fresh", nearCache.get(1, id -> "fresh"));
+        Assert.assertEquals("kept", nearCache.get(3, id -> "reloaded"));
+    }
+
+    @Test
+    public void concurrentMisses_loadFromDbOnce() throws Exception {
+        AtomicInteger dbLoads = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService callers = Executors.newFixedThreadPool(32);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                results.add(callers.submit(() -> {
+                    start.await();
+                    return nearCache.get(1, id -> null, id -> {
+                        dbLoads.incrementAndGet();
+                        sleep(50);
+                        return "wallet-1";
+                    });
+                }));
+            }
+            start.countDown();
+
+            for (Future<String> result : results) {
+                Assert.assertEquals("wallet-1", result.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+        Assert.assertEquals(1, dbLoads.get());
+        Assert.assertEquals(1, meterRegistry.get("near.cache.db").timer().count());
+        Assert.assertEquals(1, meterRegistry.get("near.cache.l2").tag("result", "miss").timer().count());
+    }
+
+    @Test
+    public void concurrentMissesOnVirtualThreads_loadOnce() throws Exception {
+        AtomicInteger redisReads = new AtomicInteger();
+        try (ExecutorService callers = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                results.add(callers.submit(() -> nearCache.get(1, id -> {
+                    redisReads.incrementAndGet();
+                    sleep(50);
+                    return "wallet-1";
+                })));
+            }
+            for (Future<String> result : results) {
+                Assert.assertEquals("wallet-1", result.get(5, TimeUnit.SECONDS));
+            }
+        }
+        Assert.assertEquals(1, redisReads.get());
+    }
+
+    @Test
+    public void invalidationDuringLoad_loadedValueIsNotKept() {
+        Assert.assertEquals("stale", nearCache.get(1, id -> {
+            // The wallet changes on another instance while this load is in flight
+            invalidationListener.onMessage(new DefaultMessage("near-cache:wallets".getBytes(StandardCharsets.UTF_8),
+                    "1".getBytes(StandardCharsets.UTF_8)), null);
+            return "stale";
+        }));
+
+        Assert.assertEquals("fresh", nearCache.get(1, id -> "fresh"));
+    }
+
+    @Test
+    public void invalidationDuringEarlyRefresh_refreshedValueIsNotKept() throws Exception {
+        NearCache<String> shortLived = new NearCache<>("short", 100, Duration.ofMillis(400), Duration.ofMinutes(1),
+                redisTemplate, listenerContainer, meterRegistry);
+        ArgumentCaptor<MessageListener> listener = ArgumentCaptor.forClass(MessageListener.class);
+        verify(listenerContainer).addMessageListener(listener.capture(), eq(new ChannelTopic("near-cache:short")));
+
+        // A slow first load makes an early refresh near certain once the entry is old
+        Assert.assertEquals("v1", shortLived.get(1, id -> {
+            sleep(200);
+            return "v1";
+        }));
+        sleep(250);
+
+        CountDownLatch refreshing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> refreshThreads = new ArrayList<>();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+        while (refreshing.getCount() > 0 && System.nanoTime() < deadline) {
+            shortLived.get(1, id -> {
+                refreshThreads.add(Thread.currentThread().getName());
+                refreshing.countDown();
+                await(release);
+                return "stale";
+            });
+        }
+        Assert.assertTrue(refreshing.await(1, TimeUnit.SECONDS));
+        Assert.assertTrue(refreshThreads.get(0).startsWith("near-cache-short-refresh-"));
+
+        // The value changes on another instance while the refresh is in flight
+        listener.getValue().onMessage(new DefaultMessage("near-cache:short".getBytes(StandardCharsets.UTF_8),
+                "1".getBytes(StandardCharsets.UTF_8)), null);
+        release.countDown();
+        sleep(50);
+
+        Assert.assertEquals("fresh", shortLived.get(1, id -> "fresh"));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    public void getReactive_fillsL1SharedWithBlockingReads() {
+        AtomicInteger redisReads = new AtomicInteger();
+
+        Assert.assertEquals("wallet-1", nearCache.getReactive(1,
+                id -> Mono.fromCallable(() -> "wallet-" + redisReads.incrementAndGet()), id -> Mono.empty()).block());
+        Assert.assertEquals("wallet-1", nearCache.getReactive(1,
+                id -> Mono.fromCallable(() -> "wallet-" + redisReads.incrementAndGet()), id -> Mono.empty()).block());
+        Assert.assertEquals("wallet-1", nearCache.get(1, id -> "wallet-" + redisReads.incrementAndGet()));
+
+        Assert.assertEquals(1, redisReads.get());
+        Assert.assertEquals(1, meterRegistry.get("near.cache.l2").tag("result", "hit").timer().count());
+    }
+
+    @Test
+    public void getReactive_concurrentMissesLoadOnce() {
+        AtomicInteger dbLoads = new AtomicInteger();
+        Sinks.One<String> db = Sinks.one();
+
+        List<Mono<String>> callers = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            Mono<String> caller = nearCache.getReactive(1, id -> Mono.empty(), id -> {
+                dbLoads.incrementAndGet();
+                return db.asMono();
+            }).cache();
+            caller.subscribe();
+            callers.add(caller);
+        }
+        db.tryEmitValue("wallet-1");
+
+        for (Mono<String> caller : callers) {
+            Assert.assertEquals("wallet-1", caller.block(Duration.ofSeconds(5)));
+        }
+        Assert.assertEquals(1, dbLoads.get());
+    }
+
+    @Test
+    public void getReactive_unknownIdCompletesEmptyAndIsRemembered() {
+        AtomicInteger dbLoads = new AtomicInteger();
+
+        Assert.assertNull(nearCache.getReactive(7, id -> Mono.empty(),
+                id -> Mono.fromRunnable(dbLoads::incrementAndGet)).block());
+        Assert.assertNull(nearCache.getReactive(7, id -> Mono.empty(),
+                id -> Mono.fromRunnable(dbLoads::incrementAndGet)).block());
+
+        Assert.assertEquals(1, dbLoads.get());
+    }
+
+    @Test
+    public void unknownId_isRememberedUntilInvalidated() {
+        AtomicInteger dbLoads = new AtomicInteger();
+
+        Assert.assertNull(nearCache.get(7, id -> null, id -> { dbLoads.incrementAndGet(); return null; }));
+        Assert.assertNull(nearCache.get(7, id -> null, id -> { dbLoads.incrementAndGet(); return null; }));
+        Assert.assertEquals(1, dbLoads.get());
+        Assert.assertEquals(1.0, meterRegistry.get("near.cache.negative.hits").counter().count(), 0.0);
+
+        // The wallet gets created on another instance
+        invalidationListener.onMessage(new DefaultMessage("near-cache:wallets".getBytes(StandardCharsets.UTF_8),
+                "7".getBytes(StandardCharsets.UTF_8)), null);
+
+        Assert.assertEquals("wallet-7", nearCache.get(7, id -> null, id -> "wallet-" + id));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.majorproject.Services;
+
+import com.example.majorproject.Events.TransactionCreatedEvent;
+import com.example.majorproject.Models.CurrencyType;
+import com.example.majorproject.Models.Wallet;
+import com.example.majorproject.Repositories.WalletRepository;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.Collection;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class WalletBatchServiceTest {
+
+    @Mock
+    private WalletRepository walletRepository;
+
+    @Mock
+    private WalletCacheService walletCacheService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private WalletBatchService walletBatchService;
+
+    @Before
+    public void setUp() {
+        walletBatchService = new WalletBatchService(walletRepository, walletCacheService, transactionManager);
+    }
+
+    private Wallet wallet(Integer id, Integer userId, Long balance) {
+        return Wallet.builder().id(id).userId(userId).balance(balance).currency(CurrencyType.USD).build();
+    }
+
+    @Test
+    public void applyTransfers_keepsPerTransferOutcomes() {
+        Wallet alice = wallet(100, 1, 10L);
+        Wallet bob = wallet(200, 2, 0L);
+        when(walletRepository.lockByUserIdIn(anyCollection())).thenReturn(List.of(alice, bob));
+
+        List<WalletBatchService.TransferOutcome> outcomes = walletBatchService.applyTransfers(List.of(
+                new TransactionCreatedEvent(1, 2, 6L, "txn-1"),
+                new TransactionCreatedEvent(1, 2, 6L, "txn-2"),   // only 4 left
+                new TransactionCreatedEvent(2, 1, 3L, "txn-3"),
+                new TransactionCreatedEvent(1, 3, 1L, "txn-4")    // no wallet for 3
+        ));
+
+        Assert.assertTrue(outcomes.get(0).success());
+        Assert.assertEquals(Integer.valueOf(100), outcomes.get(0).senderWalletId());
+        Assert.assertEquals(Integer.valueOf(200), outcomes.get(0).receiverWalletId());
+        Assert.assertEquals("Insufficient balance", outcomes.get(1).reason());
+        Assert.assertTrue(outcomes.get(2).success());
+        Assert.assertEquals("Receiver wallet not found", outcomes.get(3).reason());
+
+        // Netted: 10 - 6 + 3 and 0 + 6 - 3
+        Assert.assertEquals(Long.valueOf(7L), alice.getBalance());
+        Assert.assertEquals(Long.valueOf(3L), bob.getBalance());
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Collection<Wallet>> cached = ArgumentCaptor.forClass(Collection.class);
+        verify(walletCacheService, times(1)).saveWallets(cached.capture());
+        Assert.assertEquals(2, cached.getValue().size());
+        verify(walletRepository, times(1)).lockByUserIdIn(anyCollection());
+        verify(transactionManager, times(1)).commit(any());
+    }
+
+    @Test
+    public void applyTransfers_senderMissing_touchesNothing() {
+        when(walletRepository.lockByUserIdIn(anyCollection())).thenReturn(List.of(wallet(200, 2, 5L)));
+
+        List<WalletBatchService.TransferOutcome> outcomes =
+                walletBatchService.applyTransfers(List.of(new TransactionCreatedEvent(1, 2, 1L, "txn-1")));
+
+        Assert.assertFalse(outcomes.get(0).success());
+        Assert.assertEquals("Sender wallet not found", outcomes.get(0).reason());
+        verifyNoInteractions(walletCacheService);
+    }
+}
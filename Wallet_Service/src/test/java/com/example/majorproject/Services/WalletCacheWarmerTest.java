@@ -0,0 +1,79 @@
+package com.example.majorproject.Services;
+
+import com.example.majorproject.Models.CurrencyType;
+import com.example.majorproject.Models.Wallet;
+import com.example.majorproject.Repositories.WalletRepository;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.data.domain.Pageable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.Silent.class)
+public class WalletCacheWarmerTest {
+
+    @Mock
+    private WalletRepository walletRepository;
+
+    @Mock
+    private WalletCacheService walletCacheService;
+
+    private final List<Integer> warmed = Collections.synchronizedList(new ArrayList<>());
+
+    @Before
+    public void setUp() {
+        // Ids 1..25 with gaps every 7th id, as after deleted rows
+        List<Wallet> table = IntStream.rangeClosed(1, 25).filter(id -> id % 7 != 0)
+                .mapToObj(id -> Wallet.builder().id(id).userId(id + 1000).balance(10L).currency(CurrencyType.USD).build())
+                .toList();
+        when(walletRepository.count()).thenReturn((long) table.size());
+        when(walletRepository.findMaxId()).thenReturn(25);
+        when(walletRepository.findPage(anyInt(), anyInt(), any(Pageable.class))).thenAnswer(invocation -> {
+            int afterId = invocation.getArgument(0);
+            int lastId = invocation.getArgument(1);
+            Pageable page = invocation.getArgument(2);
+            return table.stream().filter(w -> w.getId() > afterId && w.getId() <= lastId)
+                    .limit(page.getPageSize()).toList();
+        });
+        when(walletCacheService.warmWallets(anyList())).thenAnswer(invocation -> {
+            List<Wallet> batch = invocation.getArgument(0);
+            batch.forEach(w -> warmed.add(w.getId()));
+            return (long) batch.size();
+        });
+    }
+
+    @Test
+    public void warmUp_writesEveryWalletOnceAndReportsReady() {
+        WalletCacheWarmer warmer = new WalletCacheWarmer(walletRepository, walletCacheService, true, 4, 3);
+        Assert.assertEquals(Status.OUT_OF_SERVICE, warmer.health().getStatus());
+
+        warmer.warmUp();
+
+        List<Integer> expected = IntStream.rangeClosed(1, 25).filter(id -> id % 7 != 0).boxed().toList();
+        Assert.assertEquals(expected, warmed.stream().sorted().toList());
+        Assert.assertEquals(Status.UP, warmer.health().getStatus());
+        Assert.assertEquals(22L, warmer.health().getDetails().get("loaded"));
+    }
+
+    @Test
+    public void warmUpFailure_stillReportsReady() {
+        when(walletCacheService.warmWallets(anyList())).thenThrow(new IllegalStateException("Redis down"));
+        WalletCacheWarmer warmer = new WalletCacheWarmer(walletRepository, walletCacheService, true, 4, 3);
+
+        warmer.warmUp();
+
+        Assert.assertEquals(Status.UP, warmer.health().getStatus());
+        Assert.assertEquals("FAILED", warmer.health().getDetails().get("state").toString());
+    }
+}
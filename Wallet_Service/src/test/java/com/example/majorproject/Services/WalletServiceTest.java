@@ -1,12 +1,12 @@
 package com.example.majorproject.Services;
 
 
+import com.example.majorproject.Events.TransactionCreatedEvent;
+import com.example.majorproject.Events.UserCreatedEvent;
+import com.example.majorproject.Events.WalletUpdatedEvent;
 import com.example.majorproject.Exceptions.WalletNotFoundException;
 import com.example.majorproject.Models.Wallet;
 import com.example.majorproject.Repositories.WalletRepository;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import org.json.simple.parser.ParseException;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.jupiter.api.BeforeEach;
@@ -17,6 +17,11 @@ import org.mockito.Mockito;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import static org.junit.Assert.assertThrows;
 import static org.mockito.ArgumentMatchers.*;
@@ -29,16 +34,16 @@ public class WalletServiceTest{
     private WalletService walletService;
 
     @Mock
-    private  KafkaTemplate<String, String> kafkaTemplate;
+    private  KafkaTemplate<String, Object> kafkaTemplate;
 
     @Mock
     private  WalletRepository walletRepository;
 
     @Mock
-    private ObjectMapper objectMapper;
+    private WalletCacheService walletCacheService;
 
     @Mock
-    private WalletCacheService walletCacheService;
+    private WalletBatchService walletBatchService;
 
 
     @Before
@@ -46,21 +51,20 @@ public class WalletServiceTest{
         // Ensure walletOpeningBalance is not null for tests
         ReflectionTestUtils.setField(walletService, "walletOpeningBalance", 10L);
         ReflectionTestUtils.setField(walletService, "WALLET_UPDATED_TOPIC", "wallet-updated-topic");
+        ReflectionTestUtils.setField(walletService, "publishAttempts", 3);
+        ReflectionTestUtils.setField(walletService, "publishRetryBackoffMs", 1L);
+        lenient().when(kafkaTemplate.send(anyString(), anyString(), any())).thenReturn(CompletableFuture.completedFuture(null));
     }
 
 
     @Test
     public void UserCreatedTest(){
-        String msg = "{ \"id\": 1, " +
-                "\"name\": \"Alice\", " +
-                "\"age\": 25, " +
-                "\"email\": \"alice@example.com\", " +
-                "\"phone\": \"9876543210\" }";
+        UserCreatedEvent event = new UserCreatedEvent(1, "John");
 
         when(walletRepository.findByUserId(anyInt())).thenReturn(null);
 
 
-        walletService.userCreated(msg);
+        walletService.userCreated(event);
 
         verify(walletRepository).save(Mockito.argThat(wallet ->
                 wallet.getUserId() == 1 &&
@@ -73,18 +77,14 @@ public class WalletServiceTest{
 
     @Test
     public void WalletAlreadyExists(){
-        String msg = "{ \"id\": 1, " +
-                "\"name\": \"Alice\", " +
-                "\"age\": 25, " +
-                "\"email\": \"alice@example.com\", " +
-                "\"phone\": \"9876543210\" }";
+        UserCreatedEvent event = new UserCreatedEvent(1, "John");
 
         Wallet wallet = new Wallet();
         wallet.setUserId(1);
 
         when(walletRepository.findByUserId(anyInt())).thenReturn(wallet);
 
-        walletService.userCreated(msg);
+        walletService.userCreated(event);
 
         verify(walletRepository, Mockito.times(1)).findByUserId(1);
         // Verify save never called
@@ -96,10 +96,8 @@ public class WalletServiceTest{
 
 
     @Test
-    public void InvalidJson(){
-        String msg="Invalid-Json format";
-
-        walletService.userCreated(msg);
+    public void UserCreated_MissingId(){
+        walletService.userCreated(new UserCreatedEvent(null, null));
 
 
         verify(walletRepository, never()).findByUserId(anyInt());
@@ -111,158 +109,249 @@ public class WalletServiceTest{
 
     @Test
     public void TransactionCreatedSuccessfully() throws Exception {
-        String msg = "{ \"sender\": 1, " +
-                "\"receiver\": 2, " +
-                "\"amount\": 5, " +
-                "\"externalTransactionId\": \"txn-12345\" }";
-
-        // Mock sender wallet
-        Wallet senderWallet = new Wallet();
-        senderWallet.setId(100); // mock DB id
-        senderWallet.setUserId(1);
-        senderWallet.setBalance(10L);
+        TransactionCreatedEvent event = new TransactionCreatedEvent(1, 2, 5L, "txn-12345");
 
-        // Mock receiver wallet
-        Wallet receiverWallet = new Wallet();
-        receiverWallet.setId(200); // mock DB id
-        receiverWallet.setUserId(2);
-        receiverWallet.setBalance(10L);
+        // Mock atomic move in Redis
+        when(walletCacheService.moveBalance(1, 2, 5L))
+                .thenReturn(new WalletCacheService.BalanceMove(WalletCacheService.MoveStatus.MOVED, 100, 200));
 
-        // Updated wallets after DB update
-        Wallet updatedSenderWallet = new Wallet();
-        updatedSenderWallet.setId(100);
-        updatedSenderWallet.setUserId(1);
-        updatedSenderWallet.setBalance(5L); // deducted
+        // Mock atomic DB transfer (both rows updated)
+        when(walletRepository.transfer(1, 2, 5L)).thenReturn(2);
 
-        Wallet updatedReceiverWallet = new Wallet();
-        updatedReceiverWallet.setId(200);
-        updatedReceiverWallet.setUserId(2);
-        updatedReceiverWallet.setBalance(15L); // added
+        // Act
+        walletService.transactionCreated(event);
 
-        // Mock cache lookup
-        when(walletCacheService.getWallet(1)).thenReturn(senderWallet);
-        when(walletCacheService.getWallet(2)).thenReturn(receiverWallet);
+        // Assert/Verify: one Redis round trip and one DB round trip
+        verify(walletCacheService, times(1)).moveBalance(1, 2, 5L);
+        verify(walletCacheService, never()).getWallet(anyInt());
+        verify(walletCacheService, never()).saveWallet(any());
 
-        // Mock DB update
-        doNothing().when(walletRepository).updateWallet(eq(100), eq(-5L));
-        doNothing().when(walletRepository).updateWallet(eq(200), eq(5L));
+        verify(walletRepository, times(1)).transfer(1, 2, 5L);
+        verify(walletRepository, never()).updateWallet(anyInt(), anyLong());
+        verify(walletRepository, never()).findByUserIdIn(anyCollection());
+        verify(walletRepository, never()).findByUserId(anyInt());
 
-        // Mock DB fetch after update
-        when(walletRepository.findByUserId(1)).thenReturn(updatedSenderWallet);
-        when(walletRepository.findByUserId(2)).thenReturn(updatedReceiverWallet);
+        verify(kafkaTemplate, times(1)).send("wallet-updated-topic", "1",
+                WalletUpdatedEvent.success(1, 2, 5L, "txn-12345", 100, 200));
 
-        // Stub ObjectMapper serialization
-        when(objectMapper.writeValueAsString(any())).thenReturn("success-json");
+    }
 
-        // Act
-        walletService.transactionCreated(msg);
 
-        // Assert/Verify
-        verify(walletCacheService, times(1)).getWallet(1);
-        verify(walletCacheService, times(1)).getWallet(2);
+    @Test
+    public void TransactionCreated_CacheMissLoadsWallets() throws Exception {
+        TransactionCreatedEvent event = new TransactionCreatedEvent(1, 2, 5L, "txn-12345");
 
-        verify(walletRepository, times(1)).updateWallet(100, -5L);
-        verify(walletRepository, times(1)).updateWallet(200, 5L);
+        Wallet senderWallet = new Wallet();
+        senderWallet.setId(100);
+        senderWallet.setUserId(1);
+        senderWallet.setBalance(10L);
 
-        verify(walletRepository, times(1)).findByUserId(1);
-        verify(walletRepository, times(1)).findByUserId(2);
+        Wallet receiverWallet = new Wallet();
+        receiverWallet.setId(200);
+        receiverWallet.setUserId(2);
+        receiverWallet.setBalance(10L);
 
-        verify(walletCacheService, times(1)).saveWallet(updatedSenderWallet);
-        verify(walletCacheService, times(1)).saveWallet(updatedReceiverWallet);
+        when(walletCacheService.moveBalance(1, 2, 5L))
+                .thenReturn(new WalletCacheService.BalanceMove(WalletCacheService.MoveStatus.RECEIVER_MISSING, null, null))
+                .thenReturn(new WalletCacheService.BalanceMove(WalletCacheService.MoveStatus.MOVED, 100, 200));
+        when(walletCacheService.getWallet(1)).thenReturn(senderWallet);
+        when(walletCacheService.getWallet(2)).thenReturn(receiverWallet);
+        when(walletRepository.transfer(1, 2, 5L)).thenReturn(2);
 
-        verify(kafkaTemplate, times(1)).send(eq("wallet-updated-topic"), eq("success-json"));
+        walletService.transactionCreated(event);
 
+        verify(walletCacheService, times(2)).moveBalance(1, 2, 5L);
+        verify(walletRepository, times(1)).transfer(1, 2, 5L);
+        verify(kafkaTemplate, times(1)).send("wallet-updated-topic", "1",
+                WalletUpdatedEvent.success(1, 2, 5L, "txn-12345", 100, 200));
     }
 
 
 
     @Test
     public void TransactionCreated_SenderWalletNotFound() throws Exception {
-        String msg = "{ \"sender\": 1, " +
-                "\"receiver\": 2, " +
-                "\"amount\": 5, " +
-                "\"externalTransactionId\": \"txn-12345\" }";
+        TransactionCreatedEvent event = new TransactionCreatedEvent(1, 2, 5L, "txn-12345");
 
         // Sender wallet missing
+        when(walletCacheService.moveBalance(1, 2, 5L))
+                .thenReturn(new WalletCacheService.BalanceMove(WalletCacheService.MoveStatus.SENDER_MISSING, null, null));
         when(walletCacheService.getWallet(any())).thenReturn(null);
 
-        when(objectMapper.writeValueAsString(any())).thenReturn("failed-json");
-
-        walletService.transactionCreated(msg);
+        walletService.transactionCreated(event);
 
-        verify(walletRepository, never()).updateWallet(anyInt(), anyLong());
-        verify(kafkaTemplate).send("wallet-updated-topic", "failed-json");
+        verify(walletRepository, never()).transfer(anyInt(), anyInt(), anyLong());
+        verify(kafkaTemplate).send("wallet-updated-topic", "1",
+                WalletUpdatedEvent.failed(1, 2, 5L, "txn-12345", "Sender wallet not found"));
     }
 
 
     @Test
     public void TransactionCreated_ReceiverWalletNotFound() throws Exception {
-        String msg = "{ \"sender\": 1, " +
-                "\"receiver\": 2, " +
-                "\"amount\": 5, " +
-                "\"externalTransactionId\": \"txn-12345\" }";
+        TransactionCreatedEvent event = new TransactionCreatedEvent(1, 2, 5L, "txn-12345");
 
         Wallet senderWallet = new Wallet();
         senderWallet.setId(100);
         senderWallet.setUserId(1);
         senderWallet.setBalance(20L);
 
-
-
+        Mockito.when(walletCacheService.moveBalance(1, 2, 5L))
+                .thenReturn(new WalletCacheService.BalanceMove(WalletCacheService.MoveStatus.RECEIVER_MISSING, null, null));
         Mockito.when(walletCacheService.getWallet(1)).thenReturn(senderWallet);
         Mockito.when(walletCacheService.getWallet(2)).thenReturn(null);
 
-        Mockito.when(objectMapper.writeValueAsString(any())).thenReturn("failed-json");
+        walletService.transactionCreated(event);
 
-        walletService.transactionCreated(msg);
-
-        verify(walletRepository, never()).updateWallet(anyInt(), anyLong());
-        verify(kafkaTemplate).send("wallet-updated-topic", "failed-json");
+        verify(walletCacheService, times(1)).moveBalance(1, 2, 5L);
+        verify(walletRepository, never()).transfer(anyInt(), anyInt(), anyLong());
+        verify(kafkaTemplate).send("wallet-updated-topic", "1",
+                WalletUpdatedEvent.failed(1, 2, 5L, "txn-12345", "Receiver wallet not found"));
     }
 
 
 
     @Test
     public void TransactionCreated_InsufficientBalance() throws Exception {
-        String msg = "{ \"sender\": 1, " +
-                "\"receiver\": 2, " +
-                "\"amount\": 50, " +
-                "\"externalTransactionId\": \"txn-12345\" }";
+        TransactionCreatedEvent event = new TransactionCreatedEvent(1, 2, 50L, "txn-12345");
 
-        Wallet senderWallet = new Wallet();
-        senderWallet.setId(100);
-        senderWallet.setUserId(1);
-        senderWallet.setBalance(10L); // less than amount
+        Mockito.when(walletCacheService.moveBalance(1, 2, 50L))
+                .thenReturn(new WalletCacheService.BalanceMove(WalletCacheService.MoveStatus.INSUFFICIENT_BALANCE, null, null));
+        // MySQL confirms the rejection
+        when(walletRepository.transfer(1, 2, 50L)).thenReturn(0);
+        when(walletRepository.findByUserIdIn(anyCollection())).thenReturn(List.of(wallet(100, 1, 10L), wallet(200, 2, 10L)));
 
-        Wallet receiverWallet = new Wallet();
-        receiverWallet.setId(200);
-        receiverWallet.setUserId(2);
-        receiverWallet.setBalance(20L);
+        walletService.transactionCreated(event);
+
+        verify(walletCacheService, never()).getWallet(anyInt());
+        verify(walletRepository, times(1)).transfer(1, 2, 50L);
+        verify(walletCacheService, never()).evictWallets(anyCollection());
+        verify(kafkaTemplate).send("wallet-updated-topic", "1",
+                WalletUpdatedEvent.failed(1, 2, 50L, "txn-12345", "Insufficient balance"));
+    }
 
-        Mockito.when(walletCacheService.getWallet(1)).thenReturn(senderWallet);
-        Mockito.when(walletCacheService.getWallet(2)).thenReturn(receiverWallet);
 
-        when(objectMapper.writeValueAsString(any())).thenReturn("failed-json");
+    @Test
+    public void TransactionCreated_StaleCachedRejection() throws Exception {
+        TransactionCreatedEvent event = new TransactionCreatedEvent(1, 2, 50L, "txn-12345");
 
-        walletService.transactionCreated(msg);
+        // Redis has an old balance, MySQL has enough
+        Mockito.when(walletCacheService.moveBalance(1, 2, 50L))
+                .thenReturn(new WalletCacheService.BalanceMove(WalletCacheService.MoveStatus.INSUFFICIENT_BALANCE, null, null));
+        when(walletRepository.transfer(1, 2, 50L)).thenReturn(2);
+        when(walletRepository.findByUserIdIn(anyCollection())).thenReturn(List.of(wallet(100, 1, 50L), wallet(200, 2, 60L)));
 
-        verify(walletRepository, never()).updateWallet(anyInt(), anyLong());
-        verify(kafkaTemplate).send("wallet-updated-topic", "failed-json");
+        walletService.transactionCreated(event);
+
+        verify(walletCacheService).evictWallets(List.of(1, 2));
+        verify(kafkaTemplate).send("wallet-updated-topic", "1",
+                WalletUpdatedEvent.success(1, 2, 50L, "txn-12345", 100, 200));
+    }
+
+
+    @Test
+    public void TransactionCreated_WalletEvictedAgainIsReloaded() throws Exception {
+        TransactionCreatedEvent event = new TransactionCreatedEvent(1, 2, 5L, "txn-12345");
+
+        when(walletCacheService.moveBalance(1, 2, 5L))
+                .thenReturn(new WalletCacheService.BalanceMove(WalletCacheService.MoveStatus.SENDER_MISSING, null, null))
+                .thenReturn(new WalletCacheService.BalanceMove(WalletCacheService.MoveStatus.RECEIVER_MISSING, null, null))
+                .thenReturn(new WalletCacheService.BalanceMove(WalletCacheService.MoveStatus.MOVED, 100, 200));
+        when(walletCacheService.getWallet(1)).thenReturn(wallet(100, 1, 10L));
+        when(walletCacheService.getWallet(2)).thenReturn(wallet(200, 2, 10L));
+        when(walletRepository.transfer(1, 2, 5L)).thenReturn(2);
+
+        walletService.transactionCreated(event);
+
+        verify(walletCacheService, times(3)).moveBalance(1, 2, 5L);
+        verify(kafkaTemplate).send("wallet-updated-topic", "1",
+                WalletUpdatedEvent.success(1, 2, 5L, "txn-12345", 100, 200));
+    }
+
+    @Test
+    public void TransactionCreated_FailedPublishIsRetried() throws Exception {
+        TransactionCreatedEvent event = new TransactionCreatedEvent(1, 2, 5L, "txn-12345");
+        WalletUpdatedEvent expected = WalletUpdatedEvent.success(1, 2, 5L, "txn-12345", 100, 200);
+
+        when(walletCacheService.moveBalance(1, 2, 5L))
+                .thenReturn(new WalletCacheService.BalanceMove(WalletCacheService.MoveStatus.MOVED, 100, 200));
+        when(walletRepository.transfer(1, 2, 5L)).thenReturn(2);
+        when(kafkaTemplate.send("wallet-updated-topic", "1", expected))
+                .thenReturn(CompletableFuture.failedFuture(new RuntimeException("delivery timeout")))
+                .thenReturn(CompletableFuture.completedFuture(null));
+
+        walletService.transactionCreated(event);
+
+        verify(kafkaTemplate, timeout(1000).times(2)).send("wallet-updated-topic", "1", expected);
+    }
+
+    private Wallet wallet(Integer id, Integer userId, Long balance) {
+        Wallet wallet = new Wallet();
+        wallet.setId(id);
+        wallet.setUserId(userId);
+        wallet.setBalance(balance);
+        return wallet;
     }
 
 
     @Test
-    public void TransactionCreated_InvalidJson() throws Exception {
-        String msg = "invalid-json";
+    public void TransactionCreated_StaleCachedBalance() throws Exception {
+        TransactionCreatedEvent event = new TransactionCreatedEvent(1, 2, 5L, "txn-12345");
+
+        Wallet latestSenderWallet = new Wallet();
+        latestSenderWallet.setId(100);
+        latestSenderWallet.setUserId(1);
+        latestSenderWallet.setBalance(2L); // DB says not enough
+
+        Wallet latestReceiverWallet = new Wallet();
+        latestReceiverWallet.setId(200);
+        latestReceiverWallet.setUserId(2);
+        latestReceiverWallet.setBalance(20L);
+
+        // Cache says enough and moves the balance
+        when(walletCacheService.moveBalance(1, 2, 5L))
+                .thenReturn(new WalletCacheService.BalanceMove(WalletCacheService.MoveStatus.MOVED, 100, 200));
+        when(walletRepository.transfer(1, 2, 5L)).thenReturn(0);
+
+        walletService.transactionCreated(event);
+
+        // Redis drops its copies and reloads them from MySQL, instead of having DB balances written over it
+        verify(walletCacheService, times(1)).evictWallets(List.of(1, 2));
+        verify(walletCacheService, never()).saveWallet(any());
+        verify(kafkaTemplate).send("wallet-updated-topic", "1",
+                WalletUpdatedEvent.failed(1, 2, 5L, "txn-12345", "Insufficient balance"));
+    }
 
-        walletService.transactionCreated(msg);
+
+    @Test
+    public void TransactionCreated_IncompleteEvent() throws Exception {
+        walletService.transactionCreated(new TransactionCreatedEvent(null, 2, 5L, "txn-12345"));
 
         verify(walletRepository, never()).findByUserId(anyInt());
-        verify(walletRepository, never()).updateWallet(anyInt(), anyLong());
+        verify(walletRepository, never()).transfer(anyInt(), anyInt(), anyLong());
         Mockito.verifyNoInteractions(kafkaTemplate);
     }
 
 
+    @Test
+    public void TransactionsCreated_BatchPublishesEveryOutcome() throws Exception {
+        TransactionCreatedEvent first = new TransactionCreatedEvent(1, 2, 5L, "txn-1");
+        TransactionCreatedEvent second = new TransactionCreatedEvent(1, 2, 50L, "txn-2");
+        // null = record that failed to deserialize
+        List<TransactionCreatedEvent> events = Arrays.asList(first, null, second);
+
+        when(walletBatchService.applyTransfers(List.of(first, second))).thenReturn(List.of(
+                new WalletBatchService.TransferOutcome(first, true, null, 100, 200),
+                new WalletBatchService.TransferOutcome(second, false, "Insufficient balance", null, null)));
+
+        walletService.transactionsCreated(events);
+
+        verify(walletBatchService, times(1)).applyTransfers(anyList());
+        verify(kafkaTemplate).send("wallet-updated-topic", "1", WalletUpdatedEvent.success(1, 2, 5L, "txn-1", 100, 200));
+        verify(kafkaTemplate).send("wallet-updated-topic", "1", WalletUpdatedEvent.failed(1, 2, 50L, "txn-2", "Insufficient balance"));
+        verifyNoInteractions(walletCacheService);
+        verify(walletRepository, never()).transfer(anyInt(), anyInt(), anyLong());
+    }
+
+
     @Test
     public void get_balance_success()  {
         Wallet wallet = new Wallet();
@@ -288,7 +377,21 @@ public class WalletServiceTest{
 
     }
 
+    @Test
+    public void get_balance_reactive_success() {
+        Wallet wallet = new Wallet();
+        wallet.setUserId(1);
+        wallet.setBalance(100L);
 
+        Mockito.when(walletCacheService.getWalletReactive(1)).thenReturn(Mono.just(wallet));
 
+        org.junit.Assert.assertEquals(Long.valueOf(100L), walletService.getBalanceReactive(1).block());
+    }
+
+    @Test
+    public void get_balance_reactive_notFound() {
+        Mockito.when(walletCacheService.getWalletReactive(1)).thenReturn(Mono.empty());
 
-}
\ No newline at end of file
+        assertThrows(WalletNotFoundException.class, () -> walletService.getBalanceReactive(1).block());
+    }
+}